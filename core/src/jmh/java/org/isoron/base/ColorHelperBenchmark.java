@@ -0,0 +1,85 @@
+package org.isoron.base;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ColorHelperBenchmark
+{
+    private static final int STEPS = 256;
+    private static final int BATCH_SIZE = 1024;
+
+    private int color1;
+    private int color2;
+    private int step;
+
+    private int gradient[];
+    private int batch1[];
+    private int batch2[];
+    private int batchOutput[];
+
+    @Setup
+    public void setUp()
+    {
+        color1 = 0xff0288d1;
+        color2 = 0xff000000;
+        step = 0;
+
+        gradient = ColorHelper.createGradient(color2, color1, STEPS + 1);
+
+        batch1 = new int[BATCH_SIZE];
+        batch2 = new int[BATCH_SIZE];
+        batchOutput = new int[BATCH_SIZE];
+        for (int i = 0; i < BATCH_SIZE; i++)
+        {
+            batch1[i] = 0xff000000 | i * 0x010203;
+            batch2[i] = 0x80000000 | i * 0x030201;
+        }
+    }
+
+    @Benchmark
+    public int mixColors()
+    {
+        step = (step + 1) % STEPS;
+        return ColorHelper.mixColors(color1, color2, step / (float) STEPS);
+    }
+
+    @Benchmark
+    public int mixColorsFixed()
+    {
+        step = (step + 1) % STEPS;
+        return ColorHelper.mixColorsFixed(color1, color2, step);
+    }
+
+    @Benchmark
+    public int gradientLookup()
+    {
+        step = (step + 1) % STEPS;
+        return gradient[step];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public int[] mixColorsBatch()
+    {
+        step = (step + 1) % STEPS;
+        ColorHelper.mixColorsFixed(batch1, batch2, step, batchOutput);
+        return batchOutput;
+    }
+}
@@ -0,0 +1,74 @@
+package org.isoron.simpletimer.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimpleTimerBenchmark
+{
+    private SimpleTimer pausedTimer;
+    private SimpleTimer runningTimer;
+    private SimpleTimer editedTimer;
+
+    private int direction;
+
+    @Setup
+    public void setUp()
+    {
+        pausedTimer = new SimpleTimer();
+        pausedTimer.setTotalTime(25 * 60 * 1000);
+
+        runningTimer = new SimpleTimer();
+        runningTimer.setTotalTime(24 * 60 * 60 * 1000);
+        runningTimer.resume();
+
+        editedTimer = new SimpleTimer();
+        editedTimer.setTotalTime(10 * 60 * 1000);
+
+        direction = 1;
+    }
+
+    @Benchmark
+    public long getRemainingTimePaused()
+    {
+        return pausedTimer.getRemainingTime();
+    }
+
+    @Benchmark
+    public long getRemainingTimeRunning()
+    {
+        return runningTimer.getRemainingTime();
+    }
+
+    @Benchmark
+    public long increment()
+    {
+        // Alternating directions keeps the total inside the same granularity
+        // band, so every iteration does the same amount of work.
+        editedTimer.increment(direction);
+        direction = -direction;
+        return editedTimer.getTotalTime();
+    }
+
+    @Benchmark
+    public boolean flip()
+    {
+        pausedTimer.flip();
+        return pausedTimer.isRunning();
+    }
+}
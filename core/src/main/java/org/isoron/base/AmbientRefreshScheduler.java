@@ -0,0 +1,126 @@
+package org.isoron.base;
+
+/**
+ * Decides how an ambient screen gets refreshed when its content changes.
+ * <p>
+ * The system already delivers an ambient update about once a minute. If that
+ * update arrives soon enough after the change, no alarm is set at all.
+ * Otherwise a single alarm is kept for the change, requests that land within
+ * the same window reuse it, and no more than a fixed number of alarm wakeups
+ * are spent per hour. Times are on the elapsed realtime clock, except for the
+ * wall time used to guess the system tick.
+ */
+public class AmbientRefreshScheduler
+{
+    public static final long DEFAULT_TICK_TOLERANCE = 5000;
+
+    private static final long SYSTEM_TICK_PERIOD = 60 * 1000;
+    private static final long HOUR = 60 * 60 * 1000;
+    private static final long COALESCE_WINDOW = 1000;
+
+    private final RefreshAlarm alarm;
+
+    private long wakeups[];
+    private int wakeupCount;
+    private int wakeupHead;
+
+    private long tickTolerance;
+    private long lastSystemTick;
+    private long alarmTime;
+
+    public AmbientRefreshScheduler(RefreshAlarm alarm, int maxWakeupsPerHour)
+    {
+        this.alarm = alarm;
+
+        tickTolerance = DEFAULT_TICK_TOLERANCE;
+        lastSystemTick = -1;
+        alarmTime = -1;
+        setMaxWakeupsPerHour(maxWakeupsPerHour);
+    }
+
+    public void setMaxWakeupsPerHour(int maxWakeupsPerHour)
+    {
+        wakeups = new long[Math.max(0, maxWakeupsPerHour)];
+        wakeupCount = 0;
+        wakeupHead = 0;
+    }
+
+    public void setTickTolerance(long tickTolerance)
+    {
+        this.tickTolerance = tickTolerance;
+    }
+
+    public void schedule(long delay, long now, long wallTime)
+    {
+        if (delay < 0)
+        {
+            cancel();
+            return;
+        }
+
+        long changeTime = now + delay;
+        long nextTick = getNextSystemTick(now, wallTime);
+
+        // The system tick comes first, so this can be decided again then.
+        // If it comes shortly after the change, it is good enough by itself.
+        if (nextTick <= changeTime + tickTolerance)
+        {
+            cancel();
+            return;
+        }
+
+        if (alarmTime >= 0 && Math.abs(alarmTime - changeTime) <= COALESCE_WINDOW) return;
+
+        // Out of wakeups; the system tick will have to do.
+        if (isBudgetExhausted(now))
+        {
+            cancel();
+            return;
+        }
+
+        alarm.set(changeTime);
+        alarmTime = changeTime;
+    }
+
+    public void cancel()
+    {
+        if (alarmTime < 0) return;
+
+        alarm.cancel();
+        alarmTime = -1;
+    }
+
+    public void onAlarm(long now)
+    {
+        alarmTime = -1;
+        if (wakeups.length == 0) return;
+
+        wakeups[wakeupHead] = now;
+        wakeupHead = (wakeupHead + 1) % wakeups.length;
+        wakeupCount = Math.min(wakeupCount + 1, wakeups.length);
+    }
+
+    public void onSystemTick(long now)
+    {
+        lastSystemTick = now;
+    }
+
+    private boolean isBudgetExhausted(long now)
+    {
+        if (wakeups.length == 0) return true;
+        if (wakeupCount < wakeups.length) return false;
+
+        long oldest = wakeups[wakeupHead];
+        return now - oldest < HOUR;
+    }
+
+    private long getNextSystemTick(long now, long wallTime)
+    {
+        if (lastSystemTick >= 0 && now - lastSystemTick < SYSTEM_TICK_PERIOD)
+            return lastSystemTick + SYSTEM_TICK_PERIOD;
+
+        // Without a recent tick to go by, assume the system updates on the
+        // wall clock minute, which is when the ambient clock needs it anyway.
+        return now + SYSTEM_TICK_PERIOD - wallTime % SYSTEM_TICK_PERIOD;
+    }
+}
@@ -0,0 +1,42 @@
+package org.isoron.base;
+
+public class DigitStrings
+{
+    public static final int COUNT = 60;
+
+    public static final char[][] PLAIN = new char[COUNT][];
+    public static final char[][] PADDED = new char[COUNT][];
+
+    static
+    {
+        for (int i = 0; i < COUNT; i++)
+        {
+            char tens = (char) ('0' + i / 10);
+            char units = (char) ('0' + i % 10);
+
+            PADDED[i] = new char[]{tens, units};
+            if (i < 10) PLAIN[i] = new char[]{units};
+            else PLAIN[i] = PADDED[i];
+        }
+    }
+
+    /**
+     * Writes the decimal digits of a non-negative value at the start of the
+     * buffer and returns how many were written.
+     */
+    public static int format(long value, char[] buffer)
+    {
+        int length = 0;
+        for (long v = value; v >= 10; v /= 10)
+            length++;
+        length++;
+
+        for (int i = length - 1; i >= 0; i--)
+        {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+
+        return length;
+    }
+}
@@ -0,0 +1,77 @@
+package org.isoron.base;
+
+import java.io.PrintWriter;
+
+/**
+ * Picks the faster of two ways of drawing the same frame by timing both on
+ * the device. Frames alternate between the paths until each has been timed
+ * the given number of times; after that the one with the lower 95th
+ * percentile (then mean) draw time is kept.
+ */
+public class DrawPathTrial
+{
+    private static final long MILLIS = 1000000;
+
+    private final LatencyHistogram firstTimes;
+    private final LatencyHistogram secondTimes;
+    private final int samples;
+
+    private boolean decided;
+    private boolean firstWins;
+
+    public DrawPathTrial(int samples)
+    {
+        this.samples = samples;
+        firstTimes = new LatencyHistogram(MILLIS / 10, 500);
+        secondTimes = new LatencyHistogram(MILLIS / 10, 500);
+    }
+
+    /**
+     * Whether the next frame should be drawn with the first path.
+     */
+    public boolean useFirst()
+    {
+        if (decided) return firstWins;
+        return firstTimes.getCount() <= secondTimes.getCount();
+    }
+
+    public void record(boolean first, long drawNanos)
+    {
+        if (decided) return;
+
+        if (first) firstTimes.record(drawNanos);
+        else secondTimes.record(drawNanos);
+
+        if (firstTimes.getCount() < samples || secondTimes.getCount() < samples) return;
+
+        long firstP95 = firstTimes.getPercentileNanos(95);
+        long secondP95 = secondTimes.getPercentileNanos(95);
+
+        if (firstP95 != secondP95) firstWins = firstP95 < secondP95;
+        else firstWins = firstTimes.getMeanNanos() <= secondTimes.getMeanNanos();
+
+        decided = true;
+    }
+
+    public boolean isDecided()
+    {
+        return decided;
+    }
+
+    public void restart()
+    {
+        firstTimes.reset();
+        secondTimes.reset();
+        decided = false;
+    }
+
+    public void dump(PrintWriter writer, String prefix, String firstName, String secondName)
+    {
+        writer.print(prefix);
+        if (!decided) writer.println("undecided");
+        else writer.println("keeping " + (firstWins ? firstName : secondName));
+
+        firstTimes.dump(writer, prefix, firstName);
+        secondTimes.dump(writer, prefix, secondName);
+    }
+}
@@ -0,0 +1,153 @@
+package org.isoron.base;
+
+import java.io.PrintWriter;
+
+/**
+ * Collects draw durations, input-to-frame and tick-to-frame latencies, and
+ * counts frames that missed their budget. Times are passed in by the view
+ * (uptime milliseconds for events, nanoseconds for draw durations).
+ */
+public class FrameMetrics
+{
+    public static final long FRAME_BUDGET_NANOS = 16666667;
+    public static final long INPUT_LATENCY_BUDGET_MILLIS = 33;
+    public static final long TICK_LATENCY_BUDGET_MILLIS = 17;
+
+    private static final long MILLIS = 1000000;
+
+    private final LatencyHistogram drawTimes;
+    private final LatencyHistogram inputLatencies;
+    private final LatencyHistogram tickLatencies;
+
+    private long frames;
+    private long slowFrames;
+    private long slowInputFrames;
+    private long lateTickFrames;
+    private long jankyFrames;
+
+    private long pendingInputTime;
+    private long pendingTickTime;
+
+    public FrameMetrics()
+    {
+        drawTimes = new LatencyHistogram(MILLIS / 10, 500);
+        inputLatencies = new LatencyHistogram(MILLIS, 250);
+        tickLatencies = new LatencyHistogram(MILLIS, 250);
+
+        pendingInputTime = -1;
+        pendingTickTime = -1;
+    }
+
+    public void onInput(long eventTime)
+    {
+        if (pendingInputTime < 0) pendingInputTime = eventTime;
+    }
+
+    public void onTick(long tickTime)
+    {
+        if (pendingTickTime < 0) pendingTickTime = tickTime;
+    }
+
+    public void onFrame(long frameTime, long drawNanos)
+    {
+        boolean janky = false;
+
+        frames++;
+        drawTimes.record(drawNanos);
+        if (drawNanos > FRAME_BUDGET_NANOS)
+        {
+            slowFrames++;
+            janky = true;
+        }
+
+        if (pendingInputTime >= 0)
+        {
+            long latency = frameTime - pendingInputTime;
+            inputLatencies.record(latency * MILLIS);
+            if (latency > INPUT_LATENCY_BUDGET_MILLIS)
+            {
+                slowInputFrames++;
+                janky = true;
+            }
+            pendingInputTime = -1;
+        }
+
+        if (pendingTickTime >= 0)
+        {
+            long latency = frameTime - pendingTickTime;
+            tickLatencies.record(latency * MILLIS);
+            if (latency > TICK_LATENCY_BUDGET_MILLIS)
+            {
+                lateTickFrames++;
+                janky = true;
+            }
+            pendingTickTime = -1;
+        }
+
+        if (janky) jankyFrames++;
+    }
+
+    public void reset()
+    {
+        drawTimes.reset();
+        inputLatencies.reset();
+        tickLatencies.reset();
+
+        frames = 0;
+        slowFrames = 0;
+        slowInputFrames = 0;
+        lateTickFrames = 0;
+        jankyFrames = 0;
+
+        pendingInputTime = -1;
+        pendingTickTime = -1;
+    }
+
+    public LatencyHistogram getDrawTimes()
+    {
+        return drawTimes;
+    }
+
+    public long getFrames()
+    {
+        return frames;
+    }
+
+    /**
+     * Frames that missed any of the budgets, each counted once.
+     */
+    public long getJankyFrames()
+    {
+        return jankyFrames;
+    }
+
+    public void dump(PrintWriter writer, String prefix)
+    {
+        writer.print(prefix);
+        writer.print("frames=");
+        writer.print(frames);
+        writer.print(" slow=");
+        writer.print(slowFrames);
+        writer.print(" slowInput=");
+        writer.print(slowInputFrames);
+        writer.print(" lateTick=");
+        writer.print(lateTickFrames);
+        writer.print(" janky=");
+        writer.println(jankyFrames);
+
+        drawTimes.dump(writer, prefix, "draw");
+        writer.print(prefix);
+        writer.print("draw budget=");
+        writer.print(LatencyHistogram.formatMillis(FRAME_BUDGET_NANOS));
+        writer.print(" p50=");
+        writer.print(LatencyHistogram.formatMillis(drawTimes.getPercentileNanos(50)));
+        writer.print(" p95=");
+        writer.print(LatencyHistogram.formatMillis(drawTimes.getPercentileNanos(95)));
+        writer.print(" within=");
+        writer.print(frames - slowFrames);
+        writer.print('/');
+        writer.println(frames);
+        inputLatencies.dump(writer, prefix, "input-to-frame");
+        tickLatencies.dump(writer, prefix, "tick-to-frame");
+    }
+}
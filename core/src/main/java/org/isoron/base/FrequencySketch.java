@@ -0,0 +1,84 @@
+package org.isoron.base;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Count-min sketch over long keys, in a fixed amount of memory. Estimates
+ * never undercount. Once a sample's worth of keys has been added, every
+ * counter is halved, so old habits fade and recent ones win.
+ */
+public class FrequencySketch
+{
+    private static final int DEPTH = 4;
+
+    private static final long SEEDS[] = {
+            0x9e3779b97f4a7c15L, 0xc2b2ae3d27d4eb4fL, 0x165667b19e3779f9L, 0xd6e8feb86659fd93L
+    };
+
+    private final int counters[];
+    private final int width;
+    private final int sampleSize;
+    private int additions;
+
+    /**
+     * @param width number of counters per row, rounded up to a power of two
+     */
+    public FrequencySketch(int width)
+    {
+        this.width = Integer.highestOneBit(Math.max(1, width - 1)) << 1;
+
+        counters = new int[DEPTH * this.width];
+        sampleSize = 10 * this.width;
+    }
+
+    public void increment(long key)
+    {
+        for (int d = 0; d < DEPTH; d++)
+            counters[index(key, d)]++;
+
+        if (++additions >= sampleSize) decay();
+    }
+
+    public int estimate(long key)
+    {
+        int min = Integer.MAX_VALUE;
+        for (int d = 0; d < DEPTH; d++)
+            min = Math.min(min, counters[index(key, d)]);
+
+        return min;
+    }
+
+    public void decay()
+    {
+        for (int i = 0; i < counters.length; i++)
+            counters[i] >>>= 1;
+
+        additions /= 2;
+    }
+
+    public int getSerializedSize()
+    {
+        return 4 + counters.length * 4;
+    }
+
+    public void write(ByteBuffer out)
+    {
+        out.putInt(additions);
+        for (int c : counters)
+            out.putInt(c);
+    }
+
+    public void read(ByteBuffer in)
+    {
+        additions = in.getInt();
+        for (int i = 0; i < counters.length; i++)
+            counters[i] = in.getInt();
+    }
+
+    private int index(long key, int d)
+    {
+        long h = key * SEEDS[d];
+        h ^= h >>> 29;
+        return d * width + ((int) (h >>> 32) & (width - 1));
+    }
+}
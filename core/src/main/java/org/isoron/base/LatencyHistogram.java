@@ -0,0 +1,109 @@
+package org.isoron.base;
+
+import java.io.PrintWriter;
+
+/**
+ * Fixed-bucket histogram of durations. Recording is a couple of array writes
+ * and never allocates, so it can sit on the draw path.
+ */
+public class LatencyHistogram
+{
+    private final long bucketNanos;
+    private final int counts[];
+
+    private long count;
+    private long totalNanos;
+    private long maxNanos;
+
+    public LatencyHistogram(long bucketNanos, int bucketCount)
+    {
+        this.bucketNanos = bucketNanos;
+        counts = new int[bucketCount + 1];
+    }
+
+    public void record(long nanos)
+    {
+        if (nanos < 0) nanos = 0;
+
+        long bucket = nanos / bucketNanos;
+        if (bucket >= counts.length) bucket = counts.length - 1;
+
+        counts[(int) bucket]++;
+        count++;
+        totalNanos += nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+    }
+
+    public void reset()
+    {
+        for (int i = 0; i < counts.length; i++)
+            counts[i] = 0;
+
+        count = 0;
+        totalNanos = 0;
+        maxNanos = 0;
+    }
+
+    public long getCount()
+    {
+        return count;
+    }
+
+    public long getMeanNanos()
+    {
+        if (count == 0) return 0;
+        return totalNanos / count;
+    }
+
+    public long getMaxNanos()
+    {
+        return maxNanos;
+    }
+
+    /**
+     * Returns the upper bound of the bucket holding the given percentile, or
+     * the maximum if it falls in the overflow bucket.
+     */
+    public long getPercentileNanos(double percentile)
+    {
+        if (count == 0) return 0;
+
+        long target = (long) Math.ceil(count * percentile / 100.0);
+        target = Math.max(1, Math.min(count, target));
+
+        long seen = 0;
+        for (int i = 0; i < counts.length - 1; i++)
+        {
+            seen += counts[i];
+            if (seen >= target) return Math.min(maxNanos, (i + 1) * bucketNanos);
+        }
+
+        return maxNanos;
+    }
+
+    public void dump(PrintWriter writer, String prefix, String name)
+    {
+        writer.print(prefix);
+        writer.print(name);
+        writer.print(": count=");
+        writer.print(count);
+        writer.print(" mean=");
+        writer.print(formatMillis(getMeanNanos()));
+        writer.print(" p50=");
+        writer.print(formatMillis(getPercentileNanos(50)));
+        writer.print(" p90=");
+        writer.print(formatMillis(getPercentileNanos(90)));
+        writer.print(" p95=");
+        writer.print(formatMillis(getPercentileNanos(95)));
+        writer.print(" p99=");
+        writer.print(formatMillis(getPercentileNanos(99)));
+        writer.print(" max=");
+        writer.println(formatMillis(maxNanos));
+    }
+
+    static String formatMillis(long nanos)
+    {
+        long hundredths = nanos / 10000;
+        return (hundredths / 100) + "." + (hundredths % 100 / 10) + (hundredths % 10) + "ms";
+    }
+}
@@ -0,0 +1,162 @@
+package org.isoron.base;
+
+import java.io.PrintWriter;
+
+/**
+ * Tallies what a timer session costs in alarm wakeups, wake lock time,
+ * vibration time and UI-thread CPU time. Finished sessions go into a fixed
+ * ring of primitive records, so accounting never allocates.
+ */
+public class PowerLedger
+{
+    private static final int START = 0;
+    private static final int END = 1;
+    private static final int ALARMS = 2;
+    private static final int WAKE_LOCK = 3;
+    private static final int VIBRATION = 4;
+    private static final int CPU = 5;
+    private static final int FIELDS = 6;
+
+    private final long sessions[];
+    private final int capacity;
+    private int head;
+    private int count;
+
+    private final long current[];
+    private long cpuAtStart;
+    private boolean active;
+
+    public PowerLedger(int capacity)
+    {
+        this.capacity = capacity;
+        sessions = new long[capacity * FIELDS];
+        current = new long[FIELDS];
+    }
+
+    public boolean isSessionActive()
+    {
+        return active;
+    }
+
+    public void startSession(long now, long cpuTime)
+    {
+        if (active) return;
+
+        for (int i = 0; i < FIELDS; i++)
+            current[i] = 0;
+
+        current[START] = now;
+        cpuAtStart = cpuTime;
+        active = true;
+    }
+
+    public void endSession(long now, long cpuTime)
+    {
+        if (!active) return;
+
+        current[END] = now;
+        current[CPU] = cpuTime - cpuAtStart;
+
+        System.arraycopy(current, 0, sessions, head * FIELDS, FIELDS);
+        head = (head + 1) % capacity;
+        count = Math.min(count + 1, capacity);
+        active = false;
+    }
+
+    public void onAlarmWakeup()
+    {
+        if (active) current[ALARMS]++;
+    }
+
+    public void onWakeLock(long millis)
+    {
+        if (active) current[WAKE_LOCK] += millis;
+    }
+
+    public void onVibration(long millis)
+    {
+        if (active) current[VIBRATION] += millis;
+    }
+
+    public void onVibration(long pattern[])
+    {
+        // Odd entries of a vibration pattern are the "on" durations.
+        for (int i = 1; i < pattern.length; i += 2)
+            onVibration(pattern[i]);
+    }
+
+    /**
+     * Finished sessions are numbered from 0 (oldest still kept) to
+     * getSessionCount() - 1 (newest).
+     */
+    public int getSessionCount()
+    {
+        return count;
+    }
+
+    public long getAlarmWakeups(int session)
+    {
+        return get(session, ALARMS);
+    }
+
+    public long getWakeLockMillis(int session)
+    {
+        return get(session, WAKE_LOCK);
+    }
+
+    public long getVibrationMillis(int session)
+    {
+        return get(session, VIBRATION);
+    }
+
+    public long getCpuMillis(int session)
+    {
+        return get(session, CPU);
+    }
+
+    public long getDurationMillis(int session)
+    {
+        return get(session, END) - get(session, START);
+    }
+
+    private long get(int session, int field)
+    {
+        if (session < 0 || session >= count) throw new IndexOutOfBoundsException();
+
+        int index = (head - count + session + capacity) % capacity;
+        return sessions[index * FIELDS + field];
+    }
+
+    public void dump(PrintWriter writer, String prefix)
+    {
+        writer.print(prefix);
+        writer.println("session duration_ms alarms wakelock_ms vibration_ms ui_cpu_ms");
+
+        for (int i = 0; i < count; i++)
+        {
+            writer.print(prefix);
+            writer.print(i);
+            writer.print(' ');
+            writer.print(getDurationMillis(i));
+            writer.print(' ');
+            writer.print(getAlarmWakeups(i));
+            writer.print(' ');
+            writer.print(getWakeLockMillis(i));
+            writer.print(' ');
+            writer.print(getVibrationMillis(i));
+            writer.print(' ');
+            writer.println(getCpuMillis(i));
+        }
+
+        if (active)
+        {
+            writer.print(prefix);
+            writer.print("current alarms=");
+            writer.print(current[ALARMS]);
+            writer.print(" wakelock_ms=");
+            writer.print(current[WAKE_LOCK]);
+            writer.print(" vibration_ms=");
+            writer.println(current[VIBRATION]);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package org.isoron.base;
+
+/**
+ * A single wakeup alarm on the elapsed realtime clock, as used by
+ * AmbientRefreshScheduler. Setting it again moves it.
+ */
+public interface RefreshAlarm
+{
+    public void set(long elapsedTime);
+
+    public void cancel();
+}
@@ -0,0 +1,92 @@
+package org.isoron.simpletimer.history;
+
+import java.nio.ByteBuffer;
+
+/**
+ * One event in the life of a timer run. Each record takes exactly SIZE bytes
+ * on disk and ends with a checksum, so a torn tail can be told apart from
+ * real data.
+ */
+public final class HistoryRecord
+{
+    public static final int TYPE_START = 1;
+    public static final int TYPE_PAUSE = 2;
+    public static final int TYPE_RESUME = 3;
+    public static final int TYPE_RESET = 4;
+    public static final int TYPE_COMPLETE = 5;
+
+    static final int SIZE = 32;
+
+    private final int type;
+    private final long time;
+    private final long totalTime;
+    private final long elapsedTime;
+
+    /**
+     * @param time        wall clock time of the event
+     * @param totalTime   duration the timer was set to
+     * @param elapsedTime wall clock time since the run started, pauses
+     *                    included
+     */
+    public HistoryRecord(int type, long time, long totalTime, long elapsedTime)
+    {
+        this.type = type;
+        this.time = time;
+        this.totalTime = totalTime;
+        this.elapsedTime = elapsedTime;
+    }
+
+    public int getType()
+    {
+        return type;
+    }
+
+    public long getTime()
+    {
+        return time;
+    }
+
+    public long getTotalTime()
+    {
+        return totalTime;
+    }
+
+    public long getElapsedTime()
+    {
+        return elapsedTime;
+    }
+
+    void write(ByteBuffer out)
+    {
+        out.putLong(time);
+        out.putInt(type);
+        out.putLong(totalTime);
+        out.putLong(elapsedTime);
+        out.putInt(checksum(type, time, totalTime, elapsedTime));
+    }
+
+    /**
+     * Returns null if the record fails its checksum.
+     */
+    static HistoryRecord read(ByteBuffer in)
+    {
+        long time = in.getLong();
+        int type = in.getInt();
+        long totalTime = in.getLong();
+        long elapsedTime = in.getLong();
+        int checksum = in.getInt();
+
+        if (checksum != checksum(type, time, totalTime, elapsedTime)) return null;
+        return new HistoryRecord(type, time, totalTime, elapsedTime);
+    }
+
+    private static int checksum(int type, long time, long totalTime, long elapsedTime)
+    {
+        long h = 0xcbf29ce484222325L;
+        h = (h ^ time) * 0x100000001b3L;
+        h = (h ^ type) * 0x100000001b3L;
+        h = (h ^ totalTime) * 0x100000001b3L;
+        h = (h ^ elapsedTime) * 0x100000001b3L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,66 @@
+package org.isoron.simpletimer.history;
+
+import org.isoron.simpletimer.model.TimerSnapshot;
+
+/**
+ * Turns timer state changes into history events by comparing each snapshot
+ * with the previous one. A run starts when a reset timer is resumed and ends
+ * when it is reset or completes. Elapsed times are filled in by the store,
+ * which knows when the current run started.
+ */
+public class HistoryRecorder
+{
+    private final HistoryStore store;
+
+    private TimerSnapshot previous;
+
+    public HistoryRecorder(HistoryStore store, TimerSnapshot initial)
+    {
+        this.store = store;
+        previous = initial;
+    }
+
+    public void onStateChanged(TimerSnapshot current, long now)
+    {
+        boolean wasReset = isReset(previous);
+        boolean reset = isReset(current);
+
+        if (!previous.isRunning() && current.isRunning())
+        {
+            if (wasReset) append(HistoryRecord.TYPE_START, now, current);
+            else append(HistoryRecord.TYPE_RESUME, now, current);
+        }
+        else if (previous.isRunning() && !current.isRunning())
+        {
+            if (reset) append(HistoryRecord.TYPE_RESET, now, previous);
+            else append(HistoryRecord.TYPE_PAUSE, now, current);
+        }
+        else if (reset && !wasReset)
+        {
+            append(HistoryRecord.TYPE_RESET, now, previous);
+        }
+
+        previous = current;
+    }
+
+    /**
+     * Records a completion at the deadline, however late it was noticed. The
+     * snapshot is the state the timer was left in, which is then taken as the
+     * previous one, so the reset that follows a timeout is not logged.
+     */
+    public void onTimeout(TimerSnapshot current, long deadline)
+    {
+        append(HistoryRecord.TYPE_COMPLETE, deadline, current);
+        previous = current;
+    }
+
+    private void append(int type, long time, TimerSnapshot snapshot)
+    {
+        store.append(type, time, snapshot.getTotalTime());
+    }
+
+    private static boolean isReset(TimerSnapshot snapshot)
+    {
+        return !snapshot.isRunning() && snapshot.getRemainingTime(0) == snapshot.getTotalTime();
+    }
+}
@@ -0,0 +1,263 @@
+package org.isoron.simpletimer.history;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Aggregates over the whole history, updated one record at a time. Durations
+ * are ranked with the space-saving algorithm over a fixed number of slots, so
+ * the stats have the same size however long the history gets.
+ */
+public class HistoryStats
+{
+    public static final int DURATION_SLOTS = 16;
+
+    static final int SIZE = 5 * 4 + 5 * 8 + DURATION_SLOTS * 12 + 4;
+
+    private int startCount;
+    private int pauseCount;
+    private int resetCount;
+    private int completeCount;
+
+    private long plannedTime;
+    private long actualTime;
+    private long runStart;
+
+    private final long durations[];
+    private final int durationCounts[];
+    private int durationSlots;
+
+    // Log position the stats are up to date with.
+    private int segment;
+    private long position;
+
+    public HistoryStats()
+    {
+        durations = new long[DURATION_SLOTS];
+        durationCounts = new int[DURATION_SLOTS];
+        runStart = -1;
+    }
+
+    public HistoryStats(HistoryStats other)
+    {
+        this();
+        copyFrom(other);
+    }
+
+    public int getStartCount()
+    {
+        return startCount;
+    }
+
+    public int getPauseCount()
+    {
+        return pauseCount;
+    }
+
+    public int getResetCount()
+    {
+        return resetCount;
+    }
+
+    public int getCompleteCount()
+    {
+        return completeCount;
+    }
+
+    /**
+     * Sum of the durations that completed runs were set to.
+     */
+    public long getPlannedTime()
+    {
+        return plannedTime;
+    }
+
+    /**
+     * Sum of the wall clock time completed runs actually took, pauses
+     * included.
+     */
+    public long getActualTime()
+    {
+        return actualTime;
+    }
+
+    /**
+     * Time the current run started, or -1 if the last run has already been
+     * reset or completed.
+     */
+    public long getRunStart()
+    {
+        return runStart;
+    }
+
+    /**
+     * Fills the array with the most started durations, most used first, and
+     * returns how many were written.
+     */
+    public int getTopDurations(long out[])
+    {
+        int count = Math.min(out.length, durationSlots);
+        boolean taken[] = new boolean[durationSlots];
+
+        for (int i = 0; i < count; i++)
+        {
+            int best = -1;
+            for (int j = 0; j < durationSlots; j++)
+                if (!taken[j] && (best < 0 || durationCounts[j] > durationCounts[best])) best = j;
+
+            taken[best] = true;
+            out[i] = durations[best];
+        }
+
+        return count;
+    }
+
+    int getSegment()
+    {
+        return segment;
+    }
+
+    long getPosition()
+    {
+        return position;
+    }
+
+    void setPosition(int segment, long position)
+    {
+        this.segment = segment;
+        this.position = position;
+    }
+
+    void apply(HistoryRecord record)
+    {
+        switch (record.getType())
+        {
+            case HistoryRecord.TYPE_START:
+                startCount++;
+                runStart = record.getTime();
+                countDuration(record.getTotalTime());
+                break;
+
+            case HistoryRecord.TYPE_PAUSE:
+                pauseCount++;
+                break;
+
+            case HistoryRecord.TYPE_RESET:
+                resetCount++;
+                runStart = -1;
+                break;
+
+            case HistoryRecord.TYPE_COMPLETE:
+                completeCount++;
+                plannedTime += record.getTotalTime();
+                actualTime += record.getElapsedTime();
+                runStart = -1;
+                break;
+        }
+    }
+
+    private void countDuration(long duration)
+    {
+        int min = -1;
+
+        for (int i = 0; i < durationSlots; i++)
+        {
+            if (durations[i] == duration)
+            {
+                durationCounts[i]++;
+                return;
+            }
+
+            if (min < 0 || durationCounts[i] < durationCounts[min]) min = i;
+        }
+
+        if (durationSlots < DURATION_SLOTS)
+        {
+            durations[durationSlots] = duration;
+            durationCounts[durationSlots] = 1;
+            durationSlots++;
+            return;
+        }
+
+        // The newcomer inherits the evicted count, which bounds how far
+        // any count can be overestimated.
+        durations[min] = duration;
+        durationCounts[min]++;
+    }
+
+    void copyFrom(HistoryStats other)
+    {
+        startCount = other.startCount;
+        pauseCount = other.pauseCount;
+        resetCount = other.resetCount;
+        completeCount = other.completeCount;
+        plannedTime = other.plannedTime;
+        actualTime = other.actualTime;
+        runStart = other.runStart;
+        System.arraycopy(other.durations, 0, durations, 0, DURATION_SLOTS);
+        System.arraycopy(other.durationCounts, 0, durationCounts, 0, DURATION_SLOTS);
+        durationSlots = other.durationSlots;
+        segment = other.segment;
+        position = other.position;
+    }
+
+    void write(ByteBuffer out)
+    {
+        int start = out.position();
+
+        out.putInt(startCount);
+        out.putInt(pauseCount);
+        out.putInt(resetCount);
+        out.putInt(completeCount);
+        out.putInt(durationSlots);
+        out.putLong(plannedTime);
+        out.putLong(actualTime);
+        out.putLong(runStart);
+        out.putLong(segment);
+        out.putLong(position);
+
+        for (int i = 0; i < DURATION_SLOTS; i++)
+        {
+            out.putLong(durations[i]);
+            out.putInt(durationCounts[i]);
+        }
+
+        out.putInt(checksum(out, start, SIZE - 4));
+    }
+
+    /**
+     * Returns false, leaving the stats unchanged, if the data is corrupt.
+     */
+    boolean read(ByteBuffer in)
+    {
+        int start = in.position();
+        if (in.getInt(start + SIZE - 4) != checksum(in, start, SIZE - 4)) return false;
+
+        startCount = in.getInt();
+        pauseCount = in.getInt();
+        resetCount = in.getInt();
+        completeCount = in.getInt();
+        durationSlots = in.getInt();
+        plannedTime = in.getLong();
+        actualTime = in.getLong();
+        runStart = in.getLong();
+        segment = (int) in.getLong();
+        position = in.getLong();
+
+        for (int i = 0; i < DURATION_SLOTS; i++)
+        {
+            durations[i] = in.getLong();
+            durationCounts[i] = in.getInt();
+        }
+
+        return true;
+    }
+
+    private static int checksum(ByteBuffer buffer, int start, int length)
+    {
+        int h = 0x811c9dc5;
+        for (int i = start; i < start + length; i++)
+            h = (h ^ (buffer.get(i) & 0xff)) * 0x01000193;
+
+        return h;
+    }
+}
@@ -0,0 +1,375 @@
+package org.isoron.simpletimer.history;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.Executor;
+
+/**
+ * Append-only log of timer events, one segment file per month, plus a small
+ * stats file that is rewritten after every append.
+ * <p>
+ * The stats file remembers how far into the log it is up to date, so opening
+ * the store only replays the few records written after it was last saved, for
+ * example when the app died between the two writes. Opening and appending
+ * both happen on the given executor, which must be serial. Failures there
+ * are counted rather than thrown, since history must never fail the timer.
+ */
+public class HistoryStore
+{
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String STATS_FILENAME = "stats.bin";
+
+    private final File directory;
+    private final Executor executor;
+    private final HistoryStats stats;
+
+    private final ByteBuffer recordBuffer;
+    private final ByteBuffer statsBuffer;
+    private final Calendar calendar;
+
+    private RandomAccessFile statsFile;
+    private RandomAccessFile segmentFile;
+    private int segment;
+
+    private int failureCount;
+    private IOException lastFailure;
+
+    private HistoryStore(File directory, Executor executor)
+    {
+        this.directory = directory;
+        this.executor = executor;
+
+        stats = new HistoryStats();
+        recordBuffer = ByteBuffer.allocate(HistoryRecord.SIZE);
+        statsBuffer = ByteBuffer.allocate(HistoryStats.SIZE);
+        calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        segment = -1;
+    }
+
+    /**
+     * Returns a store that loads itself on the executor. Until it has, the
+     * stats are empty and appends wait behind the load.
+     */
+    public static HistoryStore open(File directory, Executor executor)
+    {
+        final HistoryStore store = new HistoryStore(directory, executor);
+
+        executor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    store.load();
+                }
+                catch (IOException e)
+                {
+                    store.onFailure(e);
+                }
+            }
+        });
+
+        return store;
+    }
+
+    public void append(final HistoryRecord record)
+    {
+        executor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    write(record);
+                }
+                catch (IOException e)
+                {
+                    onFailure(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Appends an event whose elapsed time is measured from the start of the
+     * current run. The run start comes from the stats as they are when the
+     * event is written, so it is right even if the store was still loading
+     * when the event happened.
+     */
+    public void append(final int type, final long time, final long totalTime)
+    {
+        executor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    writeEvent(type, time, totalTime);
+                }
+                catch (IOException e)
+                {
+                    onFailure(e);
+                }
+            }
+        });
+    }
+
+    public synchronized HistoryStats getStats()
+    {
+        return new HistoryStats(stats);
+    }
+
+    /**
+     * Number of loads and appends that failed, for the dump.
+     */
+    public synchronized int getFailureCount()
+    {
+        return failureCount;
+    }
+
+    public synchronized IOException getLastFailure()
+    {
+        return lastFailure;
+    }
+
+    /**
+     * Prints the stats and failures while holding the lock, so a dump taken
+     * during an append never mixes counters from before and after it.
+     */
+    public synchronized void dump(PrintWriter writer, String prefix)
+    {
+        long durations[] = new long[5];
+        int count = stats.getTopDurations(durations);
+
+        writer.print(prefix);
+        writer.println("History:");
+        writer.print(prefix);
+        writer.println(String.format("  runs=%d completed=%d reset=%d pauses=%d",
+                stats.getStartCount(), stats.getCompleteCount(), stats.getResetCount(),
+                stats.getPauseCount()));
+        writer.print(prefix);
+        writer.println(String.format("  planned=%ds actual=%ds", stats.getPlannedTime() / 1000,
+                stats.getActualTime() / 1000));
+
+        writer.print(prefix);
+        writer.print("  top durations:");
+        for (int i = 0; i < count; i++)
+            writer.print(" " + durations[i] / 1000 + "s");
+        writer.println();
+
+        if (failureCount == 0) return;
+
+        writer.print(prefix);
+        writer.println(String.format("  failures=%d last=%s", failureCount, lastFailure));
+    }
+
+    private synchronized void onFailure(IOException e)
+    {
+        failureCount++;
+        lastFailure = e;
+    }
+
+    /**
+     * Reads up to max records, newest first. Only the tail of the log is
+     * touched, so the cost does not depend on how long the history is.
+     */
+    public synchronized List<HistoryRecord> readRecent(int max) throws IOException
+    {
+        List<HistoryRecord> records = new ArrayList<HistoryRecord>(max);
+        int segments[] = listSegments();
+
+        for (int i = segments.length - 1; i >= 0 && records.size() < max; i--)
+        {
+            RandomAccessFile file = new RandomAccessFile(getSegmentFile(segments[i]), "r");
+
+            try
+            {
+                long count = file.length() / HistoryRecord.SIZE;
+                for (long j = count - 1; j >= 0 && records.size() < max; j--)
+                {
+                    HistoryRecord record = readRecord(file, j * HistoryRecord.SIZE);
+                    if (record != null) records.add(record);
+                }
+            }
+            finally
+            {
+                file.close();
+            }
+        }
+
+        return records;
+    }
+
+    public synchronized void close() throws IOException
+    {
+        if (segmentFile != null) segmentFile.close();
+        if (statsFile != null) statsFile.close();
+    }
+
+    private synchronized void load() throws IOException
+    {
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("could not create " + directory);
+
+        statsFile = new RandomAccessFile(new File(directory, STATS_FILENAME), "rw");
+
+        if (statsFile.length() == HistoryStats.SIZE)
+        {
+            statsFile.readFully(statsBuffer.array());
+            statsBuffer.clear();
+            if (!stats.read(statsBuffer)) stats.copyFrom(new HistoryStats());
+        }
+
+        for (int s : listSegments())
+        {
+            if (s < stats.getSegment()) continue;
+
+            long start = s == stats.getSegment() ? stats.getPosition() : 0;
+            stats.setPosition(s, replay(s, start));
+        }
+
+        saveStats();
+    }
+
+    private long replay(int s, long start) throws IOException
+    {
+        RandomAccessFile file = new RandomAccessFile(getSegmentFile(s), "r");
+
+        try
+        {
+            long end = file.length() - file.length() % HistoryRecord.SIZE;
+
+            for (long position = start; position < end; position += HistoryRecord.SIZE)
+            {
+                HistoryRecord record = readRecord(file, position);
+                if (record != null) stats.apply(record);
+            }
+
+            return Math.max(start, end);
+        }
+        finally
+        {
+            file.close();
+        }
+    }
+
+    private synchronized void writeEvent(int type, long time, long totalTime)
+            throws IOException
+    {
+        long runStart = stats.getRunStart();
+        long elapsed = runStart < 0 ? 0 : time - runStart;
+
+        if (type == HistoryRecord.TYPE_START) elapsed = 0;
+        else if (type == HistoryRecord.TYPE_COMPLETE && runStart < 0) elapsed = totalTime;
+
+        write(new HistoryRecord(type, time, totalTime, elapsed));
+    }
+
+    private synchronized void write(HistoryRecord record) throws IOException
+    {
+        if (statsFile == null) throw new IOException("history was not loaded");
+
+        // Segments never go backwards, even if the clock does, so the stats
+        // position always covers everything before it.
+        int s = Math.max(getSegment(record.getTime()), stats.getSegment());
+        if (s != segment) openSegment(s);
+
+        recordBuffer.clear();
+        record.write(recordBuffer);
+
+        long position = segmentFile.length();
+        segmentFile.seek(position);
+        segmentFile.write(recordBuffer.array());
+
+        stats.apply(record);
+        stats.setPosition(segment, position + HistoryRecord.SIZE);
+        saveStats();
+    }
+
+    private void openSegment(int s) throws IOException
+    {
+        if (segmentFile != null) segmentFile.close();
+
+        segmentFile = new RandomAccessFile(getSegmentFile(s), "rw");
+        segment = s;
+
+        // Drop a record torn by a crash, so the next one starts aligned.
+        long length = segmentFile.length();
+        segmentFile.setLength(length - length % HistoryRecord.SIZE);
+    }
+
+    private void saveStats() throws IOException
+    {
+        statsBuffer.clear();
+        stats.write(statsBuffer);
+
+        statsFile.seek(0);
+        statsFile.write(statsBuffer.array());
+    }
+
+    private HistoryRecord readRecord(RandomAccessFile file, long position) throws IOException
+    {
+        file.seek(position);
+        file.readFully(recordBuffer.array());
+
+        recordBuffer.clear();
+        return HistoryRecord.read(recordBuffer);
+    }
+
+    private int getSegment(long time)
+    {
+        calendar.setTimeInMillis(time);
+        return calendar.get(Calendar.YEAR) * 100 + calendar.get(Calendar.MONTH) + 1;
+    }
+
+    private File getSegmentFile(int s)
+    {
+        return new File(directory, s + SEGMENT_SUFFIX);
+    }
+
+    private int[] listSegments()
+    {
+        String names[] = directory.list(new FilenameFilter()
+        {
+            @Override
+            public boolean accept(File dir, String name)
+            {
+                return name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+
+        if (names == null) return new int[0];
+
+        int segments[] = new int[names.length];
+        int count = 0;
+
+        for (String name : names)
+        {
+            try
+            {
+                String s = name.substring(0, name.length() - SEGMENT_SUFFIX.length());
+                segments[count++] = Integer.parseInt(s);
+            }
+            catch (NumberFormatException e)
+            {
+                // Not one of ours.
+            }
+        }
+
+        segments = Arrays.copyOf(segments, count);
+        Arrays.sort(segments);
+        return segments;
+    }
+}
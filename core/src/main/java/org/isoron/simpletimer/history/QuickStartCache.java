@@ -0,0 +1,252 @@
+package org.isoron.simpletimer.history;
+
+import org.isoron.base.FrequencySketch;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+
+/**
+ * Learns which durations get started most often and keeps the top few ready
+ * to show. Frequencies come from a decaying sketch, so memory stays bounded
+ * and the ranking follows recent use. The ranking and the sketch are saved
+ * together to a small file, which is all that needs reading at startup.
+ * Reading, recording and saving all happen on the given executor, which must
+ * be serial, so a duration recorded early is never lost to the load.
+ */
+public class QuickStartCache
+{
+    private static final int VERSION = 1;
+    private static final int SKETCH_WIDTH = 64;
+
+    private final File file;
+    private final Executor executor;
+    private final FrequencySketch sketch;
+    private final Runnable changeCallback;
+
+    private final long durations[];
+    private final int counts[];
+    private int size;
+
+    private QuickStartCache(File file, Executor executor, int capacity,
+                            Runnable changeCallback)
+    {
+        this.file = file;
+        this.executor = executor;
+        this.changeCallback = changeCallback;
+
+        sketch = new FrequencySketch(SKETCH_WIDTH);
+        durations = new long[capacity];
+        counts = new int[capacity];
+    }
+
+    /**
+     * Opens the cache and queues reading it, starting empty if the file is
+     * missing or corrupt. Until then there are no durations. The callback, if
+     * any, runs on the executor whenever the durations may have changed.
+     */
+    public static QuickStartCache open(File file, Executor executor, int capacity,
+                                       Runnable changeCallback)
+    {
+        final QuickStartCache cache = new QuickStartCache(file, executor, capacity,
+                changeCallback);
+
+        executor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                cache.load();
+            }
+        });
+
+        return cache;
+    }
+
+    public void record(final long duration)
+    {
+        if (duration <= 0) return;
+
+        executor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                write(update(duration));
+                onChanged();
+            }
+        });
+    }
+
+    private synchronized byte[] update(long duration)
+    {
+        sketch.increment(duration);
+
+        // Decay may have lowered the others, so their counts are refreshed
+        // before deciding whether the new duration displaces one.
+        boolean found = false;
+        for (int i = 0; i < size; i++)
+        {
+            counts[i] = sketch.estimate(durations[i]);
+            if (durations[i] == duration) found = true;
+        }
+
+        sort();
+
+        if (!found)
+        {
+            int estimate = sketch.estimate(duration);
+            int slot = -1;
+
+            if (size < durations.length) slot = size++;
+            else if (estimate > counts[size - 1]) slot = size - 1;
+
+            if (slot >= 0)
+            {
+                durations[slot] = duration;
+                counts[slot] = estimate;
+                sort();
+            }
+        }
+
+        return serialize();
+    }
+
+    /**
+     * Fills the array with the top durations, most used first, and returns how
+     * many were written.
+     */
+    public synchronized int getDurations(long out[])
+    {
+        int count = Math.min(out.length, size);
+        System.arraycopy(durations, 0, out, 0, count);
+        return count;
+    }
+
+    private void sort()
+    {
+        for (int i = 1; i < size; i++)
+        {
+            for (int j = i; j > 0 && counts[j] > counts[j - 1]; j--)
+            {
+                long d = durations[j];
+                durations[j] = durations[j - 1];
+                durations[j - 1] = d;
+
+                int c = counts[j];
+                counts[j] = counts[j - 1];
+                counts[j - 1] = c;
+            }
+        }
+    }
+
+    private int getFileSize()
+    {
+        return 3 * 4 + durations.length * 8 + sketch.getSerializedSize();
+    }
+
+    private void load()
+    {
+        try
+        {
+            if (file.length() == getFileSize()) read();
+        }
+        catch (IOException e)
+        {
+            synchronized (this)
+            {
+                size = 0;
+            }
+        }
+
+        onChanged();
+    }
+
+    private void onChanged()
+    {
+        if (changeCallback != null) changeCallback.run();
+    }
+
+    private synchronized void read() throws IOException
+    {
+        byte data[] = new byte[getFileSize()];
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+        try
+        {
+            raf.readFully(data);
+        }
+        finally
+        {
+            raf.close();
+        }
+
+        ByteBuffer in = ByteBuffer.wrap(data);
+        if (in.getInt(data.length - 4) != checksum(data, data.length - 4)) return;
+        if (in.getInt() != VERSION) return;
+
+        size = Math.min(in.getInt(), durations.length);
+        for (int i = 0; i < durations.length; i++)
+            durations[i] = in.getLong();
+
+        sketch.read(in);
+
+        for (int i = 0; i < size; i++)
+            counts[i] = sketch.estimate(durations[i]);
+    }
+
+    private byte[] serialize()
+    {
+        byte data[] = new byte[getFileSize()];
+        ByteBuffer out = ByteBuffer.wrap(data);
+
+        out.putInt(VERSION);
+        out.putInt(size);
+        for (long d : durations)
+            out.putLong(d);
+
+        sketch.write(out);
+        out.putInt(checksum(data, data.length - 4));
+        return data;
+    }
+
+    private void write(byte data[])
+    {
+        File temp = new File(file.getPath() + ".tmp");
+
+        try
+        {
+            FileOutputStream out = new FileOutputStream(temp);
+
+            try
+            {
+                out.write(data);
+            }
+            finally
+            {
+                out.close();
+            }
+
+            // The rename replaces the old file in one step, so a crash
+            // leaves either the old cache or the new one.
+            if (!temp.renameTo(file)) temp.delete();
+        }
+        catch (IOException e)
+        {
+            // The cache is only a shortcut; it gets rebuilt by use.
+            temp.delete();
+        }
+    }
+
+    private static int checksum(byte data[], int length)
+    {
+        int h = 0x811c9dc5;
+        for (int i = 0; i < length; i++)
+            h = (h ^ (data[i] & 0xff)) * 0x01000193;
+
+        return h;
+    }
+}
@@ -0,0 +1,113 @@
+package org.isoron.simpletimer.model;
+
+/**
+ * Lap times kept in a primitive ring that doubles as it fills, up to a fixed
+ * capacity, after which the oldest laps are overwritten. Count, total, min
+ * and max are kept as laps arrive and cover every lap ever added, so the
+ * stats stay exact after old laps fall out of the ring.
+ */
+public class LapBuffer
+{
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int maxCapacity;
+
+    private long laps[];
+    private int head;
+    private int size;
+
+    private long count;
+    private long total;
+    private long min;
+    private long max;
+
+    public LapBuffer(int maxCapacity)
+    {
+        if (maxCapacity <= 0) throw new IllegalArgumentException("capacity " + maxCapacity);
+
+        this.maxCapacity = maxCapacity;
+        laps = new long[Math.min(INITIAL_CAPACITY, maxCapacity)];
+        clear();
+    }
+
+    public void add(long lap)
+    {
+        if (size == laps.length && laps.length < maxCapacity) grow();
+
+        laps[(head + size) % laps.length] = lap;
+        if (size < laps.length) size++;
+        else head = (head + 1) % laps.length;
+
+        count++;
+        total += lap;
+        min = Math.min(min, lap);
+        max = Math.max(max, lap);
+    }
+
+    public void clear()
+    {
+        head = 0;
+        size = 0;
+        count = 0;
+        total = 0;
+        min = Long.MAX_VALUE;
+        max = Long.MIN_VALUE;
+    }
+
+    /**
+     * Number of laps still held, at most the maximum capacity.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Retained lap by age, 0 being the oldest one still held.
+     */
+    public long get(int index)
+    {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("lap " + index);
+        return laps[(head + index) % laps.length];
+    }
+
+    public long getLast()
+    {
+        return get(size - 1);
+    }
+
+    public long getCount()
+    {
+        return count;
+    }
+
+    public long getTotal()
+    {
+        return total;
+    }
+
+    public long getMin()
+    {
+        return count == 0 ? 0 : min;
+    }
+
+    public long getMax()
+    {
+        return count == 0 ? 0 : max;
+    }
+
+    public long getMean()
+    {
+        return count == 0 ? 0 : total / count;
+    }
+
+    private void grow()
+    {
+        long grown[] = new long[Math.min(laps.length * 2, maxCapacity)];
+        for (int i = 0; i < size; i++)
+            grown[i] = laps[(head + i) % laps.length];
+
+        laps = grown;
+        head = 0;
+    }
+}
@@ -0,0 +1,381 @@
+package org.isoron.simpletimer.model;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The whole timer state lives in one immutable {@link TimerSnapshot}, swapped
+ * with compare-and-set. Readers on any thread see a consistent snapshot with a
+ * single volatile read, and every mutation is one atomic step.
+ * <p>
+ * Listeners are kept in a copy-on-write array. Subscribing is rare and copies
+ * the array; dispatching reads it once and allocates nothing.
+ */
+public class SimpleTimer
+{
+    private static final String TAG = "TimerView";
+
+    private final AtomicReference<TimerSnapshot> state;
+
+    private static final SimpleTimerListener NO_LISTENERS[] = new SimpleTimerListener[0];
+
+    private static final int EVENT_STARTED = 0;
+    private static final int EVENT_PAUSED = 1;
+    private static final int EVENT_RESET = 2;
+    private static final int EVENT_DURATION_CHANGED = 3;
+
+    private volatile SimpleTimerListener listeners[];
+
+    private volatile SimpleTimerListener tickListeners[];
+
+    private long tickDeadline;
+    private long tickSeconds;
+
+    private static final int DEFAULT_INITIAL_TIME = 5 * 60 * 1000;
+
+    public SimpleTimer()
+    {
+        state = new AtomicReference<TimerSnapshot>(
+                TimerSnapshot.paused(DEFAULT_INITIAL_TIME, DEFAULT_INITIAL_TIME));
+        listeners = NO_LISTENERS;
+        tickListeners = NO_LISTENERS;
+        tickDeadline = -1;
+    }
+
+    /**
+     * Adds a listener. Listeners are notified in the order they were added.
+     * Second ticks are only delivered to listeners added with
+     * {@link #addTickListener(SimpleTimerListener)}.
+     */
+    public synchronized void addListener(SimpleTimerListener listener)
+    {
+        listeners = append(listeners, listener);
+    }
+
+    public synchronized void removeListener(SimpleTimerListener listener)
+    {
+        listeners = remove(listeners, listener);
+    }
+
+    /**
+     * Adds a listener for {@link SimpleTimerListener#onSecondTick} only; it is
+     * not told about other events unless also added with addListener. Hosts
+     * only need to drive {@link #dispatchSecondTick()} while
+     * {@link #hasTickListeners()} is true.
+     */
+    public synchronized void addTickListener(SimpleTimerListener listener)
+    {
+        tickListeners = append(tickListeners, listener);
+    }
+
+    public synchronized void removeTickListener(SimpleTimerListener listener)
+    {
+        tickListeners = remove(tickListeners, listener);
+    }
+
+    public boolean hasTickListeners()
+    {
+        return tickListeners.length > 0;
+    }
+
+    private static SimpleTimerListener[] append(SimpleTimerListener current[],
+                                                SimpleTimerListener listener)
+    {
+        SimpleTimerListener next[] = new SimpleTimerListener[current.length + 1];
+        System.arraycopy(current, 0, next, 0, current.length);
+        next[current.length] = listener;
+        return next;
+    }
+
+    private static SimpleTimerListener[] remove(SimpleTimerListener current[],
+                                                SimpleTimerListener listener)
+    {
+        for (int i = 0; i < current.length; i++)
+        {
+            if (current[i] != listener) continue;
+
+            SimpleTimerListener next[] = new SimpleTimerListener[current.length - 1];
+            System.arraycopy(current, 0, next, 0, i);
+            System.arraycopy(current, i + 1, next, i, current.length - i - 1);
+            return next;
+        }
+
+        return current;
+    }
+
+    public TimerSnapshot getSnapshot()
+    {
+        return state.get();
+    }
+
+    public void resume()
+    {
+        TimerSnapshot next;
+
+        while (true)
+        {
+            TimerSnapshot current = state.get();
+            if (current.isRunning()) return;
+
+            next = start(current);
+            if (state.compareAndSet(current, next)) break;
+        }
+
+        dispatch(EVENT_STARTED, next);
+    }
+
+    public void pause()
+    {
+        TimerSnapshot next;
+
+        while (true)
+        {
+            TimerSnapshot current = state.get();
+            if (!current.isRunning()) return;
+
+            next = stop(current);
+            if (state.compareAndSet(current, next)) break;
+        }
+
+        dispatch(EVENT_PAUSED, next);
+    }
+
+    public boolean isRunning()
+    {
+        return state.get().isRunning();
+    }
+
+    public boolean isPaused()
+    {
+        return !state.get().isRunning();
+    }
+
+    public void flip()
+    {
+        TimerSnapshot next;
+
+        while (true)
+        {
+            TimerSnapshot current = state.get();
+
+            if (current.isRunning()) next = stop(current);
+            else next = start(current);
+
+            if (state.compareAndSet(current, next)) break;
+        }
+
+        dispatch(next.isRunning() ? EVENT_STARTED : EVENT_PAUSED, next);
+    }
+
+    public void reset()
+    {
+        TimerSnapshot next;
+
+        while (true)
+        {
+            TimerSnapshot current = state.get();
+            long total = current.getTotalTime();
+
+            next = TimerSnapshot.paused(total, total);
+            if (state.compareAndSet(current, next)) break;
+        }
+
+        dispatch(EVENT_RESET, next);
+    }
+
+    public void restore(boolean running, long deadline, long totalTime, long remainingTime)
+    {
+        if (running) state.set(TimerSnapshot.running(totalTime, deadline));
+        else state.set(TimerSnapshot.paused(totalTime, remainingTime));
+    }
+
+    public long getRemainingTime()
+    {
+        return state.get().getRemainingTime(System.currentTimeMillis());
+    }
+
+    public boolean checkTimeout()
+    {
+        long now = System.currentTimeMillis();
+        TimerSnapshot current;
+        TimerSnapshot next;
+
+        while (true)
+        {
+            current = state.get();
+            if (!current.isRunning() || current.getDeadline() > now) return false;
+
+            long total = current.getTotalTime();
+            next = TimerSnapshot.paused(total, total);
+            if (state.compareAndSet(current, next)) break;
+        }
+
+        SimpleTimerListener l[] = listeners;
+        for (int i = 0; i < l.length; i++)
+            l[i].onTimeout(now - current.getDeadline());
+
+        dispatch(EVENT_RESET, next);
+        return true;
+    }
+
+    public long getTotalTime()
+    {
+        return state.get().getTotalTime();
+    }
+
+    public long getDeadline()
+    {
+        TimerSnapshot current = state.get();
+        if (!current.isRunning()) return -1;
+        return current.getDeadline();
+    }
+
+    public void setTotalTime(long totalTime)
+    {
+        TimerSnapshot next;
+
+        while (true)
+        {
+            TimerSnapshot current = state.get();
+
+            if (current.isRunning())
+            {
+                long deadline = current.getDeadline() - current.getTotalTime() + totalTime;
+                next = TimerSnapshot.running(totalTime, deadline);
+            }
+            else next = TimerSnapshot.paused(totalTime, totalTime);
+
+            if (state.compareAndSet(current, next)) break;
+        }
+
+        dispatch(EVENT_DURATION_CHANGED, next);
+    }
+
+    public long getMillisecondsUntilNextMinute()
+    {
+        TimerSnapshot current = state.get();
+        if (!current.isRunning()) return -1;
+
+        long remaining = current.getRemainingTime(System.currentTimeMillis());
+        if (remaining < 1000) return -1;
+
+        // Minutes are shown rounded up from whole seconds, so the count
+        // changes when the remaining time drops below N minutes and a second.
+        return (remaining - 1000) % 60000 + 1;
+    }
+
+    /**
+     * Time until the whole seconds of the remaining time next change, worked
+     * out from the deadline, or -1 if they will not change.
+     */
+    public long getMillisecondsUntilNextSecond()
+    {
+        TimerSnapshot current = state.get();
+        if (!current.isRunning()) return -1;
+
+        long remaining = current.getRemainingTime(System.currentTimeMillis());
+        if (remaining <= 0) return -1;
+
+        return remaining % 1000 + 1;
+    }
+
+    /**
+     * Notifies tick listeners of the remaining seconds if they changed since the
+     * last call. The host calls this when {@link #getMillisecondsUntilNextSecond()}
+     * says so, from a single thread, so the timer itself never polls.
+     */
+    public void dispatchSecondTick()
+    {
+        TimerSnapshot current = state.get();
+        if (!current.isRunning()) return;
+
+        long seconds = current.getRemainingTime(System.currentTimeMillis()) / 1000;
+        if (current.getDeadline() == tickDeadline && seconds == tickSeconds) return;
+
+        tickDeadline = current.getDeadline();
+        tickSeconds = seconds;
+
+        SimpleTimerListener l[] = tickListeners;
+        for (int i = 0; i < l.length; i++)
+            l[i].onSecondTick(current, seconds);
+    }
+
+    /**
+     * Moves the total time by the given number of steps, each one being ten
+     * seconds up to three minutes and one minute above that. Any number of
+     * steps is applied as a single update.
+     */
+    public void increment(int steps)
+    {
+        if (steps == 0) return;
+
+        int direction = steps > 0 ? 1 : -1;
+
+        TimerSnapshot next;
+
+        while (true)
+        {
+            TimerSnapshot current = state.get();
+            if (current.isRunning()) return;
+
+            long totalTime = current.getTotalTime();
+            for (int i = 0; i < Math.abs(steps) && (totalTime > 0 || direction > 0); i++)
+                totalTime = step(totalTime, direction);
+
+            next = TimerSnapshot.paused(totalTime, totalTime);
+            if (state.compareAndSet(current, next)) break;
+        }
+
+        dispatch(EVENT_DURATION_CHANGED, next);
+    }
+
+    private static long step(long totalTime, int direction)
+    {
+        int granularity = 60000;
+        if (totalTime + direction <= 3 * 60000) granularity = 10000;
+
+        totalTime = Math.max(0, totalTime + direction * granularity);
+        return (totalTime / granularity) * granularity;
+    }
+
+    private static TimerSnapshot start(TimerSnapshot current)
+    {
+        long now = System.currentTimeMillis();
+        return TimerSnapshot.running(current.getTotalTime(), now + current.getRemainingTime(now));
+    }
+
+    private static TimerSnapshot stop(TimerSnapshot current)
+    {
+        long now = System.currentTimeMillis();
+        return TimerSnapshot.paused(current.getTotalTime(), current.getRemainingTime(now));
+    }
+
+    private void dispatch(int event, TimerSnapshot snapshot)
+    {
+        SimpleTimerListener l[] = listeners;
+
+        for (int i = 0; i < l.length; i++)
+        {
+            switch (event)
+            {
+                case EVENT_STARTED:
+                    l[i].onStarted(snapshot);
+                    break;
+
+                case EVENT_PAUSED:
+                    l[i].onPaused(snapshot);
+                    break;
+
+                case EVENT_RESET:
+                    l[i].onReset(snapshot);
+                    break;
+
+                case EVENT_DURATION_CHANGED:
+                    l[i].onDurationChanged(snapshot);
+                    break;
+            }
+        }
+
+        for (int i = 0; i < l.length; i++)
+            l[i].onStateChanged();
+    }
+}
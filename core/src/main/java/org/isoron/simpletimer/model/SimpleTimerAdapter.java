@@ -0,0 +1,42 @@
+package org.isoron.simpletimer.model;
+
+/**
+ * Ignores every event, so subscribers only override the ones they need.
+ */
+public class SimpleTimerAdapter implements SimpleTimerListener
+{
+    @Override
+    public void onStarted(TimerSnapshot snapshot)
+    {
+    }
+
+    @Override
+    public void onPaused(TimerSnapshot snapshot)
+    {
+    }
+
+    @Override
+    public void onReset(TimerSnapshot snapshot)
+    {
+    }
+
+    @Override
+    public void onDurationChanged(TimerSnapshot snapshot)
+    {
+    }
+
+    @Override
+    public void onSecondTick(TimerSnapshot snapshot, long remainingSeconds)
+    {
+    }
+
+    @Override
+    public void onTimeout(long lateness)
+    {
+    }
+
+    @Override
+    public void onStateChanged()
+    {
+    }
+}
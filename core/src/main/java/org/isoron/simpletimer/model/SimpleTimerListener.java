@@ -0,0 +1,24 @@
+package org.isoron.simpletimer.model;
+
+/**
+ * Events published by {@link SimpleTimer}. Each typed event carries the
+ * snapshot the change produced, and every change except a second tick is
+ * followed by {@link #onStateChanged()}, for subscribers that only need to
+ * know that something changed. A timeout is followed by a reset.
+ */
+public interface SimpleTimerListener
+{
+    public void onStarted(TimerSnapshot snapshot);
+
+    public void onPaused(TimerSnapshot snapshot);
+
+    public void onReset(TimerSnapshot snapshot);
+
+    public void onDurationChanged(TimerSnapshot snapshot);
+
+    public void onSecondTick(TimerSnapshot snapshot, long remainingSeconds);
+
+    public void onTimeout(long lateness);
+
+    public void onStateChanged();
+}
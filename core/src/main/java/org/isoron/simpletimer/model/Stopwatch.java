@@ -0,0 +1,115 @@
+package org.isoron.simpletimer.model;
+
+/**
+ * Counts up from zero and records laps. Times are nanoseconds from a
+ * monotonic clock chosen by the caller, which has to keep counting while the
+ * device sleeps; wall-clock adjustments never move the elapsed time.
+ */
+public class Stopwatch
+{
+    public static final int MAX_LAPS = 4096;
+
+    private static final long NANOS_PER_MINUTE = 60000000000L;
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    private final LapBuffer laps;
+
+    private boolean running;
+    private long runStart;
+    private long accumulated;
+    private long lapStart;
+
+    public Stopwatch()
+    {
+        laps = new LapBuffer(MAX_LAPS);
+    }
+
+    public synchronized boolean isRunning()
+    {
+        return running;
+    }
+
+    public synchronized void start(long now)
+    {
+        if (running) return;
+
+        runStart = now;
+        running = true;
+    }
+
+    public synchronized void stop(long now)
+    {
+        if (!running) return;
+
+        accumulated += now - runStart;
+        running = false;
+    }
+
+    public synchronized void flip(long now)
+    {
+        if (running) stop(now);
+        else start(now);
+    }
+
+    public synchronized void reset()
+    {
+        running = false;
+        accumulated = 0;
+        lapStart = 0;
+        laps.clear();
+    }
+
+    /**
+     * Ends the current lap and starts the next one. Returns the lap time.
+     */
+    public synchronized long lap(long now)
+    {
+        long elapsed = getElapsed(now);
+        long lap = elapsed - lapStart;
+
+        laps.add(lap);
+        lapStart = elapsed;
+        return lap;
+    }
+
+    public synchronized long getElapsed(long now)
+    {
+        if (running) return accumulated + now - runStart;
+        return accumulated;
+    }
+
+    public synchronized long getCurrentLap(long now)
+    {
+        return getElapsed(now) - lapStart;
+    }
+
+    /**
+     * Elapsed time at the end of the last lap, or zero before the first one.
+     */
+    public synchronized long getLastSplit()
+    {
+        return lapStart;
+    }
+
+    public synchronized int getLapNumber()
+    {
+        return (int) Math.min(Integer.MAX_VALUE, laps.getCount() + 1);
+    }
+
+    /**
+     * Lap times, owned by the stopwatch. Only read them while holding its
+     * lock or while no lap is being recorded.
+     */
+    public LapBuffer getLaps()
+    {
+        return laps;
+    }
+
+    public synchronized long getMillisecondsUntilNextMinute(long now)
+    {
+        if (!running) return -1;
+
+        long elapsed = getElapsed(now);
+        return (NANOS_PER_MINUTE - elapsed % NANOS_PER_MINUTE) / NANOS_PER_MILLI + 1;
+    }
+}
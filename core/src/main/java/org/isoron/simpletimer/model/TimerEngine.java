@@ -0,0 +1,291 @@
+package org.isoron.simpletimer.model;
+
+/**
+ * Hierarchical timing wheel with one-millisecond ticks. A timer is stored at
+ * the level of the highest bit in which its deadline differs from the current
+ * time, so adding one is constant-time and expiring one costs at most a move
+ * per level. Cancelling is constant-time too, except for the earliest timer:
+ * when the next one sits in a higher level, its exact deadline is found by
+ * scanning that single slot. The host keeps a single wakeup for
+ * {@link #getNextWakeup()} and calls {@link #advance(long)} when it fires.
+ */
+public class TimerEngine
+{
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = (64 + SLOT_BITS - 1) / SLOT_BITS;
+
+    private static final int NONE = -1;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final long[] occupied;
+    private final int[] heads;
+
+    private long[] deadlines;
+    private int[] next;
+    private int[] prev;
+    private int[] slots;
+    private int[] generations;
+
+    private int freeHead;
+    private int capacity;
+    private int size;
+
+    private long now;
+    private long wakeup;
+
+    private TimerEngineListener listener;
+
+    public TimerEngine(long now)
+    {
+        this.now = Math.max(0, now);
+
+        occupied = new long[LEVELS];
+        heads = new int[LEVELS * SLOTS];
+        for (int i = 0; i < heads.length; i++)
+            heads[i] = NONE;
+
+        capacity = 0;
+        freeHead = NONE;
+        wakeup = -1;
+        grow(INITIAL_CAPACITY);
+    }
+
+    public void setListener(TimerEngineListener listener)
+    {
+        this.listener = listener;
+    }
+
+    public long add(long deadline)
+    {
+        if (freeHead == NONE) grow(capacity * 2);
+
+        int index = freeHead;
+        freeHead = next[index];
+
+        deadlines[index] = deadline;
+        insert(index);
+        size++;
+
+        if (wakeup < 0 || deadline < wakeup) setWakeup(Math.max(deadline, now));
+
+        return ((long) generations[index] << 32) | index;
+    }
+
+    public boolean cancel(long timer)
+    {
+        if (!isActive(timer)) return false;
+
+        int index = (int) timer;
+        long deadline = deadlines[index];
+
+        unlink(index);
+        release(index);
+
+        if (deadline <= wakeup) setWakeup(computeWakeup());
+        return true;
+    }
+
+    public boolean isActive(long timer)
+    {
+        int index = (int) timer;
+        if (index < 0 || index >= capacity) return false;
+
+        return generations[index] == (int) (timer >>> 32) && slots[index] != NONE;
+    }
+
+    public long getDeadline(long timer)
+    {
+        if (!isActive(timer)) return -1;
+        return deadlines[(int) timer];
+    }
+
+    public long getNextWakeup()
+    {
+        return wakeup;
+    }
+
+    public long getCurrentTime()
+    {
+        return now;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public void advance(long time)
+    {
+        while (true)
+        {
+            int slot = findNextSlot();
+            if (slot == NONE) break;
+
+            long slotStart = getSlotStart(slot);
+            if (slotStart > time) break;
+
+            now = Math.max(now, slotStart);
+            processSlot(slot, time);
+        }
+
+        now = Math.max(now, time);
+        setWakeup(computeWakeup());
+    }
+
+    private void processSlot(int slot, long time)
+    {
+        while (heads[slot] != NONE)
+        {
+            int index = heads[slot];
+            unlink(index);
+
+            long deadline = deadlines[index];
+            if (deadline > now)
+            {
+                insert(index);
+                continue;
+            }
+
+            long timer = ((long) generations[index] << 32) | index;
+            release(index);
+
+            if (listener != null) listener.onTimerExpired(timer, deadline, time);
+        }
+    }
+
+    private void insert(int index)
+    {
+        long deadline = Math.max(deadlines[index], now);
+        long diff = deadline ^ now;
+
+        int level = 0;
+        if (diff != 0) level = (63 - Long.numberOfLeadingZeros(diff)) / SLOT_BITS;
+
+        int position = (int) (deadline >>> (level * SLOT_BITS)) & SLOT_MASK;
+        int slot = level * SLOTS + position;
+
+        int head = heads[slot];
+        next[index] = head;
+        prev[index] = NONE;
+        if (head != NONE) prev[head] = index;
+        heads[slot] = index;
+
+        slots[index] = slot;
+        occupied[level] |= 1L << position;
+    }
+
+    private void unlink(int index)
+    {
+        int slot = slots[index];
+        int n = next[index];
+        int p = prev[index];
+
+        if (p != NONE) next[p] = n;
+        else heads[slot] = n;
+        if (n != NONE) prev[n] = p;
+
+        if (heads[slot] == NONE)
+            occupied[slot / SLOTS] &= ~(1L << (slot & SLOT_MASK));
+
+        slots[index] = NONE;
+    }
+
+    private void release(int index)
+    {
+        generations[index]++;
+        next[index] = freeHead;
+        freeHead = index;
+        size--;
+    }
+
+    private int findNextSlot()
+    {
+        for (int level = 0; level < LEVELS; level++)
+        {
+            long bits = occupied[level];
+            if (bits == 0) continue;
+
+            int current = (int) (now >>> (level * SLOT_BITS)) & SLOT_MASK;
+
+            // Slots behind the current position belong to groups that were
+            // already cascaded, so only the current one (level zero) and the
+            // ones after it can hold timers.
+            if (level == 0) bits &= -1L << current;
+            else if (current == SLOT_MASK) bits = 0;
+            else bits &= -1L << (current + 1);
+
+            if (bits != 0) return level * SLOTS + Long.numberOfTrailingZeros(bits);
+        }
+
+        return NONE;
+    }
+
+    private long getSlotStart(int slot)
+    {
+        int level = slot / SLOTS;
+        int shift = level * SLOT_BITS;
+
+        long upper = 0;
+        if (shift + SLOT_BITS < 64) upper = now & (-1L << (shift + SLOT_BITS));
+
+        return upper | ((long) (slot & SLOT_MASK) << shift);
+    }
+
+    private long computeWakeup()
+    {
+        int slot = findNextSlot();
+        if (slot == NONE) return -1;
+        if (slot < SLOTS) return Math.max(now, getSlotStart(slot));
+
+        // Timers in a higher level slot have not been cascaded yet, so the
+        // earliest deadline has to be picked out of that single slot.
+        long earliest = Long.MAX_VALUE;
+        for (int index = heads[slot]; index != NONE; index = next[index])
+            earliest = Math.min(earliest, deadlines[index]);
+
+        return Math.max(now, earliest);
+    }
+
+    private void setWakeup(long time)
+    {
+        if (time == wakeup) return;
+
+        wakeup = time;
+        if (listener != null) listener.onWakeupChanged(time);
+    }
+
+    private void grow(int newCapacity)
+    {
+        long[] newDeadlines = new long[newCapacity];
+        int[] newNext = new int[newCapacity];
+        int[] newPrev = new int[newCapacity];
+        int[] newSlots = new int[newCapacity];
+        int[] newGenerations = new int[newCapacity];
+
+        if (capacity > 0)
+        {
+            System.arraycopy(deadlines, 0, newDeadlines, 0, capacity);
+            System.arraycopy(next, 0, newNext, 0, capacity);
+            System.arraycopy(prev, 0, newPrev, 0, capacity);
+            System.arraycopy(slots, 0, newSlots, 0, capacity);
+            System.arraycopy(generations, 0, newGenerations, 0, capacity);
+        }
+
+        for (int i = newCapacity - 1; i >= capacity; i--)
+        {
+            newSlots[i] = NONE;
+            newGenerations[i] = 1;
+            newNext[i] = freeHead;
+            freeHead = i;
+        }
+
+        deadlines = newDeadlines;
+        next = newNext;
+        prev = newPrev;
+        slots = newSlots;
+        generations = newGenerations;
+        capacity = newCapacity;
+    }
+}
@@ -0,0 +1,8 @@
+package org.isoron.simpletimer.model;
+
+public interface TimerEngineListener
+{
+    public void onTimerExpired(long timer, long deadline, long now);
+
+    public void onWakeupChanged(long wakeupTime);
+}
@@ -0,0 +1,194 @@
+package org.isoron.simpletimer.model;
+
+/**
+ * A timer made of named steps, repeated for a number of rounds, such as work
+ * and rest intervals. The sequence is compiled once into a flat array with the
+ * end of every phase, measured from the start, so the whole sequence runs as
+ * one countdown over its total time and the current phase is just an index
+ * into that array.
+ * <p>
+ * Specs look like "work 25m, rest 5m x4": comma-separated steps, each an
+ * optional name followed by a duration such as "90s", "1m30s" or "2h",
+ * optionally followed by a separate token such as "x4" for the number of
+ * rounds.
+ */
+public class TimerSequence
+{
+    /**
+     * Specs come from other apps through SET_TIMER, so the compiled array is
+     * kept small whatever they ask for.
+     */
+    public static final int MAX_PHASES = 1000;
+
+    private final String spec;
+    private final String stepNames[];
+    private final int rounds;
+    private final long phaseEnds[];
+
+    private TimerSequence(String spec, String stepNames[], long stepDurations[], int rounds)
+    {
+        this.spec = spec;
+        this.stepNames = stepNames;
+        this.rounds = rounds;
+
+        int steps = stepDurations.length;
+        phaseEnds = new long[steps * rounds];
+
+        long end = 0;
+        for (int i = 0; i < phaseEnds.length; i++)
+        {
+            end += stepDurations[i % steps];
+            phaseEnds[i] = end;
+        }
+    }
+
+    public static TimerSequence parse(String spec)
+    {
+        String body = spec.trim();
+        int rounds = 1;
+
+        // Rounds only count as their own token, so "relax 10" is a step.
+        int split = body.lastIndexOf(' ');
+        String last = body.substring(split + 1);
+        if (split > 0 && last.startsWith("x") && isNumber(last.substring(1)))
+        {
+            rounds = Integer.parseInt(last.substring(1));
+            body = body.substring(0, split).trim();
+        }
+
+        String steps[] = body.split(",");
+        if (rounds < 1 || body.isEmpty()) throw new IllegalArgumentException(spec);
+        if ((long) steps.length * rounds > MAX_PHASES) throw new IllegalArgumentException(spec);
+
+        String names[] = new String[steps.length];
+        long durations[] = new long[steps.length];
+
+        for (int i = 0; i < steps.length; i++)
+        {
+            String step = steps[i].trim();
+            int space = step.lastIndexOf(' ');
+
+            names[i] = space < 0 ? "" : step.substring(0, space).trim();
+            durations[i] = parseDuration(step.substring(space + 1));
+        }
+
+        return new TimerSequence(spec, names, durations, rounds);
+    }
+
+    private static long parseDuration(String text)
+    {
+        long total = 0;
+        long value = -1;
+
+        for (int i = 0; i < text.length(); i++)
+        {
+            char c = text.charAt(i);
+
+            if (c >= '0' && c <= '9')
+            {
+                value = Math.max(value, 0) * 10 + (c - '0');
+                continue;
+            }
+
+            if (value < 0) throw new IllegalArgumentException(text);
+
+            if (c == 'h') total += value * 3600000;
+            else if (c == 'm') total += value * 60000;
+            else if (c == 's') total += value * 1000;
+            else throw new IllegalArgumentException(text);
+
+            value = -1;
+        }
+
+        if (value >= 0) total += value * 1000;
+        if (total <= 0) throw new IllegalArgumentException(text);
+
+        return total;
+    }
+
+    private static boolean isNumber(String text)
+    {
+        if (text.isEmpty()) return false;
+
+        for (int i = 0; i < text.length(); i++)
+            if (text.charAt(i) < '0' || text.charAt(i) > '9') return false;
+
+        return true;
+    }
+
+    public String getSpec()
+    {
+        return spec;
+    }
+
+    public long getTotalTime()
+    {
+        return phaseEnds[phaseEnds.length - 1];
+    }
+
+    public int getPhaseCount()
+    {
+        return phaseEnds.length;
+    }
+
+    /**
+     * Time from the start of the sequence to the end of the given phase.
+     */
+    public long getPhaseEnd(int phase)
+    {
+        return phaseEnds[phase];
+    }
+
+    public String getStepName(int phase)
+    {
+        return stepNames[phase % stepNames.length];
+    }
+
+    /**
+     * One-based round the given phase belongs to.
+     */
+    public int getRound(int phase)
+    {
+        return phase / stepNames.length + 1;
+    }
+
+    public int getRoundCount()
+    {
+        return rounds;
+    }
+
+    /**
+     * Phase the sequence is in after the given time since its start. Pass the
+     * phase found last time as a hint; while the timer moves forward, the
+     * answer is the hint or the one after it.
+     */
+    public int findPhase(long elapsed, int hint)
+    {
+        int phase = Math.max(0, Math.min(hint, phaseEnds.length - 1));
+
+        while (phase > 0 && elapsed < phaseEnds[phase - 1])
+            phase--;
+        while (phase < phaseEnds.length - 1 && elapsed >= phaseEnds[phase])
+            phase++;
+
+        return phase;
+    }
+
+    /**
+     * Phase the given snapshot of a timer running this sequence is in.
+     */
+    public int findPhase(TimerSnapshot snapshot, long now, int hint)
+    {
+        return findPhase(snapshot.getTotalTime() - snapshot.getRemainingTime(now), hint);
+    }
+
+    /**
+     * Wall clock time at which the given phase of a running timer ends, or -1
+     * if the timer is paused.
+     */
+    public long getPhaseDeadline(TimerSnapshot snapshot, int phase)
+    {
+        if (!snapshot.isRunning()) return -1;
+        return snapshot.getDeadline() - snapshot.getTotalTime() + phaseEnds[phase];
+    }
+}
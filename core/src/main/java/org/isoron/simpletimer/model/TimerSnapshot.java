@@ -0,0 +1,52 @@
+package org.isoron.simpletimer.model;
+
+/**
+ * Immutable view of the timer at one instant. While running, the remaining
+ * time is derived from the deadline; while paused, it is stored directly.
+ */
+public final class TimerSnapshot
+{
+    private final boolean running;
+    private final long deadline;
+    private final long totalTime;
+    private final long remainingTime;
+
+    private TimerSnapshot(boolean running, long deadline, long totalTime, long remainingTime)
+    {
+        this.running = running;
+        this.deadline = deadline;
+        this.totalTime = totalTime;
+        this.remainingTime = remainingTime;
+    }
+
+    public static TimerSnapshot paused(long totalTime, long remainingTime)
+    {
+        return new TimerSnapshot(false, -1, totalTime, remainingTime);
+    }
+
+    public static TimerSnapshot running(long totalTime, long deadline)
+    {
+        return new TimerSnapshot(true, deadline, totalTime, -1);
+    }
+
+    public boolean isRunning()
+    {
+        return running;
+    }
+
+    public long getDeadline()
+    {
+        return deadline;
+    }
+
+    public long getTotalTime()
+    {
+        return totalTime;
+    }
+
+    public long getRemainingTime(long now)
+    {
+        if (!running) return remainingTime;
+        return Math.max(0, deadline - now);
+    }
+}
@@ -0,0 +1,161 @@
+package org.isoron.simpletimer.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Executor;
+
+/**
+ * Keeps the latest timer state in a small memory-mapped file.
+ * <p>
+ * The file holds two fixed-size records that are written alternately, each
+ * with a sequence number and a checksum. A write torn by a crash leaves the
+ * other record intact, and restoring picks the newest record that checks out.
+ * Writes happen on the given executor, so callers only pay for copying a few
+ * fields.
+ */
+public class TimerStateJournal
+{
+    private static final int RECORD_SIZE = 40;
+    private static final int RECORD_COUNT = 2;
+
+    private static final int OFFSET_SEQUENCE = 0;
+    private static final int OFFSET_STATE = 8;
+    private static final int OFFSET_DEADLINE = 12;
+    private static final int OFFSET_TOTAL = 20;
+    private static final int OFFSET_REMAINING = 28;
+    private static final int OFFSET_CHECKSUM = 36;
+
+    private static final int STATE_PAUSED = 0;
+    private static final int STATE_RUNNING = 1;
+
+    private final MappedByteBuffer buffer;
+    private final Executor executor;
+
+    private long sequence;
+
+    private TimerStateJournal(MappedByteBuffer buffer, Executor executor)
+    {
+        this.buffer = buffer;
+        this.executor = executor;
+
+        sequence = 0;
+        for (int i = 0; i < RECORD_COUNT; i++)
+            if (isValid(i)) sequence = Math.max(sequence, buffer.getLong(i * RECORD_SIZE));
+    }
+
+    public static TimerStateJournal open(File file, Executor executor) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+
+        try
+        {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    RECORD_SIZE * RECORD_COUNT);
+
+            return new TimerStateJournal(buffer, executor);
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
+    public void save(SimpleTimer timer)
+    {
+        TimerSnapshot snapshot = timer.getSnapshot();
+
+        final int state = snapshot.isRunning() ? STATE_RUNNING : STATE_PAUSED;
+        final long deadline = snapshot.getDeadline();
+        final long total = snapshot.getTotalTime();
+        final long remaining = snapshot.getRemainingTime(System.currentTimeMillis());
+
+        executor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                write(state, deadline, total, remaining);
+            }
+        });
+    }
+
+    public boolean restore(SimpleTimer timer)
+    {
+        int latest = findLatest();
+        if (latest < 0) return false;
+
+        int offset = latest * RECORD_SIZE;
+        boolean running = buffer.getInt(offset + OFFSET_STATE) == STATE_RUNNING;
+        long deadline = buffer.getLong(offset + OFFSET_DEADLINE);
+        long total = buffer.getLong(offset + OFFSET_TOTAL);
+        long remaining = buffer.getLong(offset + OFFSET_REMAINING);
+
+        timer.restore(running, deadline, total, remaining);
+        return true;
+    }
+
+    private synchronized void write(int state, long deadline, long total, long remaining)
+    {
+        sequence++;
+        int offset = (int) (sequence % RECORD_COUNT) * RECORD_SIZE;
+
+        buffer.putLong(offset + OFFSET_SEQUENCE, sequence);
+        buffer.putInt(offset + OFFSET_STATE, state);
+        buffer.putLong(offset + OFFSET_DEADLINE, deadline);
+        buffer.putLong(offset + OFFSET_TOTAL, total);
+        buffer.putLong(offset + OFFSET_REMAINING, remaining);
+        buffer.putInt(offset + OFFSET_CHECKSUM,
+                checksum(sequence, state, deadline, total, remaining));
+
+        buffer.force();
+    }
+
+    private synchronized int findLatest()
+    {
+        int latest = -1;
+        long latestSequence = 0;
+
+        for (int i = 0; i < RECORD_COUNT; i++)
+        {
+            if (!isValid(i)) continue;
+
+            long s = buffer.getLong(i * RECORD_SIZE + OFFSET_SEQUENCE);
+            if (s > latestSequence)
+            {
+                latest = i;
+                latestSequence = s;
+            }
+        }
+
+        return latest;
+    }
+
+    private boolean isValid(int record)
+    {
+        int offset = record * RECORD_SIZE;
+        long s = buffer.getLong(offset + OFFSET_SEQUENCE);
+        if (s <= 0) return false;
+
+        int expected = checksum(s, buffer.getInt(offset + OFFSET_STATE),
+                buffer.getLong(offset + OFFSET_DEADLINE), buffer.getLong(offset + OFFSET_TOTAL),
+                buffer.getLong(offset + OFFSET_REMAINING));
+
+        return buffer.getInt(offset + OFFSET_CHECKSUM) == expected;
+    }
+
+    private static int checksum(long sequence, int state, long deadline, long total,
+                                long remaining)
+    {
+        long h = 0xcbf29ce484222325L;
+        h = (h ^ sequence) * 0x100000001b3L;
+        h = (h ^ state) * 0x100000001b3L;
+        h = (h ^ deadline) * 0x100000001b3L;
+        h = (h ^ total) * 0x100000001b3L;
+        h = (h ^ remaining) * 0x100000001b3L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,51 @@
+package org.isoron.simpletimer.shared;
+
+/**
+ * Layout of the shared timer state region. All values are big-endian.
+ * <pre>
+ *  0  int   magic
+ *  4  int   layout version
+ *  8  long  sequence, odd while a write is in progress
+ * 16  int   state, 0 paused or 1 running
+ * 24  long  deadline in wall-clock milliseconds, 0 while paused
+ * 32  long  total time in milliseconds
+ * 40  long  remaining time in milliseconds as of the last change
+ * 48  int   checksum of the sequence and the fields above
+ * </pre>
+ * Readers on other processes map the same file and follow the sequence lock
+ * in {@link TimerStateReader}.
+ */
+public final class SharedTimerState
+{
+    public static final int SIZE = 64;
+
+    public static final int MAGIC = 0x53544d52;
+    public static final int VERSION = 1;
+
+    public static final int STATE_PAUSED = 0;
+    public static final int STATE_RUNNING = 1;
+
+    static final int OFFSET_MAGIC = 0;
+    static final int OFFSET_VERSION = 4;
+    static final int OFFSET_SEQUENCE = 8;
+    static final int OFFSET_STATE = 16;
+    static final int OFFSET_DEADLINE = 24;
+    static final int OFFSET_TOTAL = 32;
+    static final int OFFSET_REMAINING = 40;
+    static final int OFFSET_CHECKSUM = 48;
+
+    private SharedTimerState()
+    {
+    }
+
+    static int checksum(long sequence, int state, long deadline, long total, long remaining)
+    {
+        long h = 0xcbf29ce484222325L;
+        h = (h ^ sequence) * 0x100000001b3L;
+        h = (h ^ state) * 0x100000001b3L;
+        h = (h ^ deadline) * 0x100000001b3L;
+        h = (h ^ total) * 0x100000001b3L;
+        h = (h ^ remaining) * 0x100000001b3L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,94 @@
+package org.isoron.simpletimer.shared;
+
+import org.isoron.simpletimer.model.TimerSnapshot;
+
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the shared timer state with a sequence lock. Polling is a memory read
+ * of the sequence; a new snapshot is only built when it changed, so a reader
+ * can poll on every frame without allocating or crossing processes.
+ */
+public class TimerStateReader
+{
+    private static final int MAX_ATTEMPTS = 16;
+
+    private final ByteBuffer buffer;
+
+    private long lastSequence;
+    private TimerSnapshot lastSnapshot;
+
+    public TimerStateReader(ByteBuffer buffer)
+    {
+        this.buffer = buffer;
+        lastSequence = -1;
+    }
+
+    /**
+     * Maps the region from a file descriptor, such as the one returned by
+     * the provider's openFile. The descriptor still belongs to the caller,
+     * who can close it right away; the mapping stays valid.
+     */
+    public static TimerStateReader map(FileDescriptor fd) throws IOException
+    {
+        FileChannel channel = new FileInputStream(fd).getChannel();
+        return new TimerStateReader(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                SharedTimerState.SIZE));
+    }
+
+    /**
+     * Sequence of the last published change. Cheaper than {@link #read()}
+     * for readers that only want to know whether anything changed.
+     */
+    public long getSequence()
+    {
+        return buffer.getLong(SharedTimerState.OFFSET_SEQUENCE);
+    }
+
+    /**
+     * Latest consistent snapshot, or null if nothing valid has been published
+     * yet. Keeps returning the previous snapshot if the writer stays in the
+     * middle of a write for the whole retry budget.
+     */
+    public synchronized TimerSnapshot read()
+    {
+        if (buffer.getInt(SharedTimerState.OFFSET_MAGIC) != SharedTimerState.MAGIC) return null;
+        if (buffer.getInt(SharedTimerState.OFFSET_VERSION) != SharedTimerState.VERSION)
+            return null;
+
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++)
+        {
+            long sequence = buffer.getLong(SharedTimerState.OFFSET_SEQUENCE);
+            if (sequence == lastSequence) return lastSnapshot;
+
+            if (sequence <= 0 || sequence % 2 != 0)
+            {
+                Thread.yield();
+                continue;
+            }
+
+            int state = buffer.getInt(SharedTimerState.OFFSET_STATE);
+            long deadline = buffer.getLong(SharedTimerState.OFFSET_DEADLINE);
+            long total = buffer.getLong(SharedTimerState.OFFSET_TOTAL);
+            long remaining = buffer.getLong(SharedTimerState.OFFSET_REMAINING);
+            int checksum = buffer.getInt(SharedTimerState.OFFSET_CHECKSUM);
+
+            if (buffer.getLong(SharedTimerState.OFFSET_SEQUENCE) != sequence) continue;
+            if (checksum != SharedTimerState.checksum(sequence, state, deadline, total, remaining))
+                continue;
+
+            if (state == SharedTimerState.STATE_RUNNING)
+                lastSnapshot = TimerSnapshot.running(total, deadline);
+            else lastSnapshot = TimerSnapshot.paused(total, remaining);
+
+            lastSequence = sequence;
+            return lastSnapshot;
+        }
+
+        return lastSnapshot;
+    }
+}
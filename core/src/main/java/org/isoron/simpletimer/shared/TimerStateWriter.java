@@ -0,0 +1,85 @@
+package org.isoron.simpletimer.shared;
+
+import org.isoron.simpletimer.model.TimerSnapshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Publishes timer snapshots into a memory-mapped file that other processes
+ * map read-only. A write is a handful of stores into the page cache, with no
+ * syscall and no fsync, so it can happen on the thread that changed the
+ * timer. The region does not need to survive a reboot; the journal does that.
+ */
+public class TimerStateWriter
+{
+    private final MappedByteBuffer buffer;
+    private long sequence;
+
+    private TimerStateWriter(MappedByteBuffer buffer)
+    {
+        this.buffer = buffer;
+
+        sequence = buffer.getLong(SharedTimerState.OFFSET_SEQUENCE);
+        if (buffer.getInt(SharedTimerState.OFFSET_MAGIC) != SharedTimerState.MAGIC) sequence = 0;
+        if (sequence % 2 != 0) sequence++;
+
+        buffer.putInt(SharedTimerState.OFFSET_MAGIC, SharedTimerState.MAGIC);
+        buffer.putInt(SharedTimerState.OFFSET_VERSION, SharedTimerState.VERSION);
+    }
+
+    public static TimerStateWriter open(File file) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+
+        try
+        {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    SharedTimerState.SIZE);
+
+            return new TimerStateWriter(buffer);
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
+    public synchronized void write(TimerSnapshot snapshot)
+    {
+        int state = SharedTimerState.STATE_PAUSED;
+        long deadline = 0;
+        if (snapshot.isRunning())
+        {
+            state = SharedTimerState.STATE_RUNNING;
+            deadline = snapshot.getDeadline();
+        }
+
+        long total = snapshot.getTotalTime();
+        long remaining = snapshot.getRemainingTime(System.currentTimeMillis());
+
+        // Readers that see an odd sequence, or a different one after reading
+        // the fields, try again. The checksum catches stores that another
+        // CPU observes out of order, since there are no fences to rely on.
+        buffer.putLong(SharedTimerState.OFFSET_SEQUENCE, ++sequence);
+
+        buffer.putInt(SharedTimerState.OFFSET_STATE, state);
+        buffer.putLong(SharedTimerState.OFFSET_DEADLINE, deadline);
+        buffer.putLong(SharedTimerState.OFFSET_TOTAL, total);
+        buffer.putLong(SharedTimerState.OFFSET_REMAINING, remaining);
+
+        sequence++;
+        buffer.putInt(SharedTimerState.OFFSET_CHECKSUM,
+                SharedTimerState.checksum(sequence, state, deadline, total, remaining));
+        buffer.putLong(SharedTimerState.OFFSET_SEQUENCE, sequence);
+    }
+
+    public synchronized long getSequence()
+    {
+        return sequence;
+    }
+}
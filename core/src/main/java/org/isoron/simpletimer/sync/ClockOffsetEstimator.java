@@ -0,0 +1,65 @@
+package org.isoron.simpletimer.sync;
+
+/**
+ * Estimates how far the remote clock is ahead of the local one from
+ * NTP-style round trips. Only the last few samples are kept, and the one with
+ * the shortest round trip wins, since it has the least room for asymmetric
+ * delays to skew it.
+ */
+public class ClockOffsetEstimator
+{
+    private final long offsets[];
+    private final long delays[];
+    private int head;
+    private int count;
+
+    public ClockOffsetEstimator(int capacity)
+    {
+        offsets = new long[capacity];
+        delays = new long[capacity];
+    }
+
+    /**
+     * @param originTime        local time the request was sent
+     * @param remoteReceiveTime remote time the request arrived
+     * @param remoteSendTime    remote time the reply was sent
+     * @param receiveTime       local time the reply arrived
+     */
+    public void addSample(long originTime, long remoteReceiveTime, long remoteSendTime,
+                          long receiveTime)
+    {
+        long delay = (receiveTime - originTime) - (remoteSendTime - remoteReceiveTime);
+        if (delay < 0) return;
+
+        offsets[head] = ((remoteReceiveTime - originTime) + (remoteSendTime - receiveTime)) / 2;
+        delays[head] = delay;
+        head = (head + 1) % offsets.length;
+        count = Math.min(count + 1, offsets.length);
+    }
+
+    public boolean hasEstimate()
+    {
+        return count > 0;
+    }
+
+    public long getOffset()
+    {
+        int best = findBest();
+        return best < 0 ? 0 : offsets[best];
+    }
+
+    public long getRoundTripDelay()
+    {
+        int best = findBest();
+        return best < 0 ? -1 : delays[best];
+    }
+
+    private int findBest()
+    {
+        int best = -1;
+        for (int i = 0; i < count; i++)
+            if (best < 0 || delays[i] < delays[best]) best = i;
+
+        return best;
+    }
+}
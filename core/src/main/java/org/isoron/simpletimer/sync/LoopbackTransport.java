@@ -0,0 +1,68 @@
+package org.isoron.simpletimer.sync;
+
+import java.util.LinkedList;
+
+/**
+ * In-process transport that queues messages until they are delivered
+ * explicitly, so both ends of the protocol can be driven from a test with
+ * arbitrary clocks, delays and losses.
+ */
+public class LoopbackTransport implements SyncTransport
+{
+    private final LinkedList<byte[]> queue;
+    private SyncPeer receiver;
+
+    private int messageCount;
+    private long byteCount;
+
+    public LoopbackTransport()
+    {
+        queue = new LinkedList<byte[]>();
+    }
+
+    public void setReceiver(SyncPeer receiver)
+    {
+        this.receiver = receiver;
+    }
+
+    @Override
+    public void send(byte message[])
+    {
+        queue.add(message);
+        messageCount++;
+        byteCount += message.length;
+    }
+
+    public int deliver(long now)
+    {
+        int delivered = 0;
+
+        while (!queue.isEmpty())
+        {
+            receiver.onMessage(queue.removeFirst(), now);
+            delivered++;
+        }
+
+        return delivered;
+    }
+
+    public void discard()
+    {
+        queue.clear();
+    }
+
+    public int getPendingCount()
+    {
+        return queue.size();
+    }
+
+    public int getMessageCount()
+    {
+        return messageCount;
+    }
+
+    public long getByteCount()
+    {
+        return byteCount;
+    }
+}
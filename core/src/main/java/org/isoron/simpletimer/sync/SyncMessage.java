@@ -0,0 +1,133 @@
+package org.isoron.simpletimer.sync;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * One message of the timer sync protocol. Every message starts with a small
+ * header carrying its type, a field mask, a sequence number and the sender's
+ * clock, optionally echoing the last message received from the other side so
+ * that it can estimate the clock offset. State messages then carry only the
+ * fields named in the mask; commands carry an opcode and an argument.
+ */
+class SyncMessage
+{
+    static final int TYPE_HELLO = 1;
+    static final int TYPE_STATE = 2;
+    static final int TYPE_COMMAND = 3;
+
+    static final int FIELD_RUNNING = 1;
+    static final int FIELD_DEADLINE = 2;
+    static final int FIELD_TOTAL = 4;
+    static final int FIELD_REMAINING = 8;
+    static final int FIELD_ECHO = 16;
+    static final int FIELD_FULL = 32;
+
+    static final int COMMAND_RESUME = 1;
+    static final int COMMAND_PAUSE = 2;
+    static final int COMMAND_RESET = 3;
+    static final int COMMAND_INCREMENT = 4;
+
+    static final int MAX_SIZE = 64;
+
+    private static final int VERSION = 1;
+
+    int type;
+    int mask;
+    int sequence;
+    long sendTime;
+
+    long echoTime;
+    int echoHold;
+
+    boolean running;
+    long deadline;
+    long totalTime;
+    long remainingTime;
+
+    int command;
+    int argument;
+
+    int encode(byte buffer[])
+    {
+        ByteBuffer out = ByteBuffer.wrap(buffer);
+        out.put((byte) (VERSION << 4 | type));
+        out.put((byte) mask);
+        out.putInt(sequence);
+        out.putLong(sendTime);
+
+        if ((mask & FIELD_ECHO) != 0)
+        {
+            out.putLong(echoTime);
+            out.putInt(echoHold);
+        }
+
+        if (type == TYPE_STATE)
+        {
+            if ((mask & FIELD_RUNNING) != 0) out.put((byte) (running ? 1 : 0));
+            if ((mask & FIELD_DEADLINE) != 0) out.putLong(deadline);
+            if ((mask & FIELD_TOTAL) != 0) out.putLong(totalTime);
+            if ((mask & FIELD_REMAINING) != 0) out.putLong(remainingTime);
+        }
+        else if (type == TYPE_COMMAND)
+        {
+            out.put((byte) command);
+            out.putInt(argument);
+        }
+
+        return out.position();
+    }
+
+    /**
+     * Returns false, leaving the fields undefined, if the data is not a
+     * well-formed message of a known version.
+     */
+    boolean decode(byte data[])
+    {
+        try
+        {
+            ByteBuffer in = ByteBuffer.wrap(data);
+
+            int header = in.get() & 0xff;
+            if (header >> 4 != VERSION) return false;
+
+            type = header & 0x0f;
+            mask = in.get() & 0xff;
+            sequence = in.getInt();
+            sendTime = in.getLong();
+
+            if ((mask & FIELD_ECHO) != 0)
+            {
+                echoTime = in.getLong();
+                echoHold = in.getInt();
+            }
+
+            switch (type)
+            {
+                case TYPE_HELLO:
+                    break;
+
+                case TYPE_STATE:
+                    if ((mask & FIELD_RUNNING) != 0) running = in.get() != 0;
+                    if ((mask & FIELD_DEADLINE) != 0) deadline = in.getLong();
+                    if ((mask & FIELD_TOTAL) != 0) totalTime = in.getLong();
+                    if ((mask & FIELD_REMAINING) != 0) remainingTime = in.getLong();
+                    break;
+
+                case TYPE_COMMAND:
+                    command = in.get();
+                    argument = in.getInt();
+                    break;
+
+                default:
+                    return false;
+            }
+
+            return !in.hasRemaining();
+        }
+        catch (BufferUnderflowException e)
+        {
+            return false;
+        }
+    }
+}
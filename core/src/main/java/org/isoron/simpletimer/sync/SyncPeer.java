@@ -0,0 +1,125 @@
+package org.isoron.simpletimer.sync;
+
+import java.util.Arrays;
+
+/**
+ * Common half of both ends of the sync protocol: numbers outgoing messages,
+ * echoes the other side's clock and keeps the clock offset estimate.
+ * <p>
+ * Times are in milliseconds of the local wall clock and are passed in by the
+ * caller. Peers are not thread safe; use each one from a single thread.
+ */
+public abstract class SyncPeer
+{
+    private static final int OFFSET_SAMPLES = 8;
+
+    private final SyncTransport transport;
+    private final ClockOffsetEstimator clock;
+
+    private final SyncMessage incoming;
+    private final SyncMessage outgoing;
+    private final byte buffer[];
+
+    private int sequence;
+    private int remoteSequence;
+    private long echoTime;
+    private long echoReceivedAt;
+    private int droppedCount;
+
+    protected SyncPeer(SyncTransport transport)
+    {
+        this.transport = transport;
+
+        clock = new ClockOffsetEstimator(OFFSET_SAMPLES);
+        incoming = new SyncMessage();
+        outgoing = new SyncMessage();
+        buffer = new byte[SyncMessage.MAX_SIZE];
+
+        remoteSequence = -1;
+        echoTime = -1;
+    }
+
+    public void onMessage(byte data[], long now)
+    {
+        if (!incoming.decode(data))
+        {
+            droppedCount++;
+            return;
+        }
+
+        // A HELLO opens a new session: the other side may have been recreated
+        // and numbers its messages from zero again.
+        if (incoming.type == SyncMessage.TYPE_HELLO) remoteSequence = -1;
+
+        boolean full = (incoming.mask & SyncMessage.FIELD_FULL) != 0;
+        if (!full && remoteSequence >= 0 && incoming.sequence <= remoteSequence)
+        {
+            droppedCount++;
+            return;
+        }
+
+        boolean gap = remoteSequence >= 0 && incoming.sequence != remoteSequence + 1;
+        remoteSequence = incoming.sequence;
+
+        if ((incoming.mask & SyncMessage.FIELD_ECHO) != 0)
+        {
+            long remoteReceiveTime = incoming.sendTime - incoming.echoHold;
+            clock.addSample(incoming.echoTime, remoteReceiveTime, incoming.sendTime, now);
+        }
+
+        echoTime = incoming.sendTime;
+        echoReceivedAt = now;
+
+        onReceive(incoming, gap && !full, now);
+    }
+
+    /**
+     * Milliseconds the remote clock is ahead of the local one, or zero before
+     * the first round trip completes.
+     */
+    public long getClockOffset()
+    {
+        return clock.getOffset();
+    }
+
+    public boolean hasClockOffset()
+    {
+        return clock.hasEstimate();
+    }
+
+    public long getRoundTripDelay()
+    {
+        return clock.getRoundTripDelay();
+    }
+
+    public int getDroppedCount()
+    {
+        return droppedCount;
+    }
+
+    protected abstract void onReceive(SyncMessage message, boolean gap, long now);
+
+    protected SyncMessage prepare(int type, long now)
+    {
+        outgoing.type = type;
+        outgoing.mask = 0;
+        outgoing.sequence = sequence++;
+        outgoing.sendTime = now;
+
+        if (echoTime >= 0)
+        {
+            outgoing.mask |= SyncMessage.FIELD_ECHO;
+            outgoing.echoTime = echoTime;
+            outgoing.echoHold = (int) (now - echoReceivedAt);
+            echoTime = -1;
+        }
+
+        return outgoing;
+    }
+
+    protected void send(SyncMessage message)
+    {
+        int length = message.encode(buffer);
+        transport.send(Arrays.copyOf(buffer, length));
+    }
+}
@@ -0,0 +1,6 @@
+package org.isoron.simpletimer.sync;
+
+public interface SyncTransport
+{
+    public void send(byte message[]);
+}
@@ -0,0 +1,104 @@
+package org.isoron.simpletimer.sync;
+
+/**
+ * The side that watches and controls a remote timer. It keeps a mirror of the
+ * remote state, updated from the deltas it receives, and converts the remote
+ * deadline to local time with the estimated clock offset, so remaining time
+ * can be shown without the remote side streaming ticks.
+ */
+public class TimerSyncClient extends SyncPeer
+{
+    private boolean synced;
+    private boolean running;
+    private long deadline;
+    private long totalTime;
+    private long remainingTime;
+
+    private TimerSyncListener listener;
+
+    public TimerSyncClient(SyncTransport transport)
+    {
+        super(transport);
+    }
+
+    public void setListener(TimerSyncListener listener)
+    {
+        this.listener = listener;
+    }
+
+    /**
+     * Asks the other side for its full state.
+     */
+    public void connect(long now)
+    {
+        send(prepare(SyncMessage.TYPE_HELLO, now));
+    }
+
+    public void resume(long now)
+    {
+        sendCommand(SyncMessage.COMMAND_RESUME, 0, now);
+    }
+
+    public void pause(long now)
+    {
+        sendCommand(SyncMessage.COMMAND_PAUSE, 0, now);
+    }
+
+    public void reset(long now)
+    {
+        sendCommand(SyncMessage.COMMAND_RESET, 0, now);
+    }
+
+    public void increment(int steps, long now)
+    {
+        sendCommand(SyncMessage.COMMAND_INCREMENT, steps, now);
+    }
+
+    public boolean isSynced()
+    {
+        return synced;
+    }
+
+    public boolean isRunning()
+    {
+        return running;
+    }
+
+    public long getTotalTime()
+    {
+        return totalTime;
+    }
+
+    public long getRemainingTime(long now)
+    {
+        if (!running) return remainingTime;
+        return Math.max(0, deadline - (now + getClockOffset()));
+    }
+
+    @Override
+    protected void onReceive(SyncMessage message, boolean gap, long now)
+    {
+        if (message.type != SyncMessage.TYPE_STATE) return;
+
+        int mask = message.mask;
+        if ((mask & SyncMessage.FIELD_FULL) != 0) synced = true;
+
+        if ((mask & SyncMessage.FIELD_RUNNING) != 0) running = message.running;
+        if ((mask & SyncMessage.FIELD_DEADLINE) != 0) deadline = message.deadline;
+        if ((mask & SyncMessage.FIELD_TOTAL) != 0) totalTime = message.totalTime;
+        if ((mask & SyncMessage.FIELD_REMAINING) != 0) remainingTime = message.remainingTime;
+
+        // A delta that follows a lost one may leave fields stale.
+        if (gap) connect(now);
+
+        if (listener != null) listener.onRemoteStateChanged();
+    }
+
+    private void sendCommand(int command, int argument, long now)
+    {
+        SyncMessage message = prepare(SyncMessage.TYPE_COMMAND, now);
+        message.command = command;
+        message.argument = argument;
+        send(message);
+    }
+}
@@ -0,0 +1,6 @@
+package org.isoron.simpletimer.sync;
+
+public interface TimerSyncListener
+{
+    public void onRemoteStateChanged();
+}
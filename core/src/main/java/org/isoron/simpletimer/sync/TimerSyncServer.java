@@ -0,0 +1,141 @@
+package org.isoron.simpletimer.sync;
+
+import org.isoron.simpletimer.model.SimpleTimer;
+import org.isoron.simpletimer.model.TimerSnapshot;
+
+/**
+ * The side that owns the timer. Commands from the other side are applied to
+ * the timer directly. State changes are not sent one by one: the first change
+ * after a flush asks the caller to schedule one, and the flush then sends the
+ * fields that differ from what the other side last received, in one message.
+ */
+public class TimerSyncServer extends SyncPeer
+{
+    public static final long BATCH_DELAY = 100;
+
+    private final SimpleTimer timer;
+
+    private TimerSnapshot lastSent;
+    private boolean dirty;
+    private boolean replyPending;
+
+    public TimerSyncServer(SimpleTimer timer, SyncTransport transport)
+    {
+        super(transport);
+        this.timer = timer;
+    }
+
+    /**
+     * Returns true if this is the first change since the last flush, in which
+     * case the caller should flush after BATCH_DELAY.
+     */
+    public boolean onStateChanged()
+    {
+        if (dirty) return false;
+
+        dirty = true;
+        return true;
+    }
+
+    public boolean isDirty()
+    {
+        return dirty;
+    }
+
+    public void flush(long now)
+    {
+        dirty = false;
+
+        TimerSnapshot snapshot = timer.getSnapshot();
+        int fields = diff(lastSent, snapshot);
+        if (fields == 0 && !replyPending) return;
+
+        SyncMessage message = prepare(SyncMessage.TYPE_STATE, now);
+        message.mask |= fields;
+        message.running = snapshot.isRunning();
+        message.deadline = snapshot.getDeadline();
+        message.totalTime = snapshot.getTotalTime();
+        message.remainingTime = snapshot.getRemainingTime(now);
+        send(message);
+
+        lastSent = snapshot;
+        replyPending = false;
+    }
+
+    @Override
+    protected void onReceive(SyncMessage message, boolean gap, long now)
+    {
+        switch (message.type)
+        {
+            case SyncMessage.TYPE_HELLO:
+                lastSent = null;
+                break;
+
+            case SyncMessage.TYPE_COMMAND:
+                apply(message.command, message.argument);
+                break;
+
+            default:
+                return;
+        }
+
+        // Reply right away, so the other side sees the outcome and gets its
+        // clock echoed even when the command changed nothing.
+        replyPending = true;
+        flush(now);
+    }
+
+    private void apply(int command, int argument)
+    {
+        switch (command)
+        {
+            case SyncMessage.COMMAND_RESUME:
+                timer.resume();
+                break;
+
+            case SyncMessage.COMMAND_PAUSE:
+                timer.pause();
+                break;
+
+            case SyncMessage.COMMAND_RESET:
+                timer.reset();
+                break;
+
+            case SyncMessage.COMMAND_INCREMENT:
+                timer.increment(argument);
+                break;
+        }
+    }
+
+    private static int diff(TimerSnapshot previous, TimerSnapshot current)
+    {
+        if (previous == null)
+        {
+            int fields = SyncMessage.FIELD_FULL | SyncMessage.FIELD_RUNNING
+                    | SyncMessage.FIELD_TOTAL;
+
+            if (current.isRunning()) return fields | SyncMessage.FIELD_DEADLINE;
+            else return fields | SyncMessage.FIELD_REMAINING;
+        }
+
+        int fields = 0;
+        boolean runningChanged = previous.isRunning() != current.isRunning();
+
+        if (runningChanged) fields |= SyncMessage.FIELD_RUNNING;
+        if (previous.getTotalTime() != current.getTotalTime()) fields |= SyncMessage.FIELD_TOTAL;
+
+        if (current.isRunning())
+        {
+            if (runningChanged || previous.getDeadline() != current.getDeadline())
+                fields |= SyncMessage.FIELD_DEADLINE;
+        }
+        else
+        {
+            // Paused snapshots ignore the time they are read at.
+            if (runningChanged || previous.getRemainingTime(0) != current.getRemainingTime(0))
+                fields |= SyncMessage.FIELD_REMAINING;
+        }
+
+        return fields;
+    }
+}
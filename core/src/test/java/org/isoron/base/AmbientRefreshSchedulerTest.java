@@ -0,0 +1,118 @@
+package org.isoron.base;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class AmbientRefreshSchedulerTest
+{
+    private static final long START = 1000000;
+    private static final long WALL = 1500000000000L;
+    private static final long HOUR = 60 * 60 * 1000;
+
+    private RecordingAlarm alarm;
+    private AmbientRefreshScheduler scheduler;
+
+    @Before
+    public void setUp()
+    {
+        alarm = new RecordingAlarm();
+        scheduler = new AmbientRefreshScheduler(alarm, 2);
+    }
+
+    @Test
+    public void testNearbyRequestsShareAnAlarm()
+    {
+        scheduler.onSystemTick(START);
+
+        scheduler.schedule(10000, START + 1000, WALL);
+        assertEquals(1, alarm.sets);
+        assertEquals(START + 11000, alarm.time);
+
+        scheduler.schedule(9500, START + 1200, WALL);
+        scheduler.schedule(10500, START + 1200, WALL);
+        assertEquals(1, alarm.sets);
+
+        scheduler.schedule(20000, START + 1200, WALL);
+        assertEquals(2, alarm.sets);
+        assertEquals(START + 21200, alarm.time);
+
+        scheduler.schedule(-1, START + 1200, WALL);
+        assertEquals(1, alarm.cancels);
+    }
+
+    @Test
+    public void testSystemTickIsUsedWhenCloseEnough()
+    {
+        scheduler.onSystemTick(START);
+        scheduler.schedule(20000, START, WALL);
+        assertEquals(1, alarm.sets);
+
+        // The tick at START + 60000 comes within the tolerance of the change.
+        scheduler.schedule(57000, START + 1000, WALL);
+        assertEquals(1, alarm.sets);
+        assertEquals(1, alarm.cancels);
+
+        // Without a recent tick, the next one is guessed from the wall clock,
+        // here 30 seconds away.
+        long now = START + 10 * 60000;
+        scheduler.schedule(26000, now, WALL + 30000);
+        assertEquals(1, alarm.sets);
+
+        scheduler.schedule(20000, now, WALL + 30000);
+        assertEquals(2, alarm.sets);
+        assertEquals(now + 20000, alarm.time);
+    }
+
+    @Test
+    public void testBudgetLimitsWakeupsPerHour()
+    {
+        long now = START;
+
+        for (int i = 0; i < 2; i++)
+        {
+            scheduler.onSystemTick(now);
+            scheduler.schedule(10000, now, WALL);
+            now += 10000;
+            scheduler.onAlarm(now);
+        }
+
+        assertEquals(2, alarm.sets);
+
+        scheduler.onSystemTick(now);
+        scheduler.schedule(10000, now, WALL);
+        assertEquals(2, alarm.sets);
+
+        // The first wakeup has aged out of the hour.
+        now = START + 10000 + HOUR;
+        scheduler.onSystemTick(now);
+        scheduler.schedule(10000, now, WALL);
+        assertEquals(3, alarm.sets);
+
+        scheduler.setMaxWakeupsPerHour(0);
+        scheduler.schedule(30000, now, WALL);
+        assertEquals(3, alarm.sets);
+    }
+
+    private static class RecordingAlarm implements RefreshAlarm
+    {
+        int sets;
+        int cancels;
+        long time = -1;
+
+        @Override
+        public void set(long elapsedTime)
+        {
+            sets++;
+            time = elapsedTime;
+        }
+
+        @Override
+        public void cancel()
+        {
+            cancels++;
+            time = -1;
+        }
+    }
+}
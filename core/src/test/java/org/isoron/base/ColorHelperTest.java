@@ -0,0 +1,77 @@
+package org.isoron.base;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ColorHelperTest
+{
+    @Test
+    public void testFixedMatchesFloatForEveryChannelValue()
+    {
+        for (int weight = 0; weight <= ColorHelper.FIXED_ONE; weight++)
+        {
+            float amount = weight / (float) ColorHelper.FIXED_ONE;
+
+            for (int x = 0; x < 256; x++)
+            {
+                for (int y = 0; y < 256; y++)
+                {
+                    // The same value in all four channels exercises every lane.
+                    int color1 = x * 0x01010101;
+                    int color2 = y * 0x01010101;
+
+                    int expected = ColorHelper.mixColors(color1, color2, amount);
+                    int actual = ColorHelper.mixColorsFixed(color1, color2, weight);
+                    if (expected != actual) assertEquals(expected, actual);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFixedMatchesFloatForMixedChannels()
+    {
+        int colors[] = {0xff0288d1, 0xffffffff, 0xff000000, 0x80b2ff59, 0x00000000, 0x7f9e9e9e};
+
+        for (int color1 : colors)
+            for (int color2 : colors)
+                for (int weight = 0; weight <= ColorHelper.FIXED_ONE; weight++)
+                    assertEquals(ColorHelper.mixColors(color1, color2, weight / 256f),
+                            ColorHelper.mixColorsFixed(color1, color2, weight));
+    }
+
+    @Test
+    public void testBatchMatchesSingle()
+    {
+        int colors1[] = {0xff0288d1, 0xffffffff, 0x80b2ff59};
+        int colors2[] = {0xff000000, 0xff0288d1, 0x00000000};
+        int output[] = new int[3];
+
+        ColorHelper.mixColorsFixed(colors1, colors2, 97, output);
+
+        for (int i = 0; i < output.length; i++)
+            assertEquals(ColorHelper.mixColorsFixed(colors1[i], colors2[i], 97), output[i]);
+    }
+
+    @Test
+    public void testGradientEndpoints()
+    {
+        int gradient[] = ColorHelper.createGradient(0xff0288d1, 0xffff5252, 60);
+
+        assertEquals(60, gradient.length);
+        assertEquals(0xff0288d1, gradient[0]);
+        assertEquals(0xffff5252, gradient[59]);
+
+        int single[] = ColorHelper.createGradient(0xff0288d1, 0xffff5252, 1);
+        assertEquals(0xff0288d1, single[0]);
+    }
+
+    @Test
+    public void testToFixedWeight()
+    {
+        assertEquals(0, ColorHelper.toFixedWeight(-1.0f));
+        assertEquals(128, ColorHelper.toFixedWeight(0.5f));
+        assertEquals(ColorHelper.FIXED_ONE, ColorHelper.toFixedWeight(2.0f));
+    }
+}
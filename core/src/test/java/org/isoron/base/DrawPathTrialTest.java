@@ -0,0 +1,55 @@
+package org.isoron.base;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DrawPathTrialTest
+{
+    private static final long MILLIS = 1000000;
+
+    @Test
+    public void testAlternatesThenKeepsFaster()
+    {
+        DrawPathTrial trial = new DrawPathTrial(10);
+        int firstFrames = 0;
+
+        for (int i = 0; i < 20; i++)
+        {
+            boolean first = trial.useFirst();
+            if (first) firstFrames++;
+            assertFalse(trial.isDecided());
+
+            trial.record(first, first ? 3 * MILLIS : 2 * MILLIS);
+        }
+
+        assertEquals(10, firstFrames);
+        assertTrue(trial.isDecided());
+        assertFalse(trial.useFirst());
+
+        // Once decided, frames no longer move the result.
+        trial.record(false, 50 * MILLIS);
+        assertFalse(trial.useFirst());
+
+        trial.restart();
+        assertFalse(trial.isDecided());
+        assertTrue(trial.useFirst());
+    }
+
+    @Test
+    public void testTieGoesToLowerMean()
+    {
+        DrawPathTrial trial = new DrawPathTrial(4);
+
+        for (int i = 0; i < 8; i++)
+        {
+            boolean first = trial.useFirst();
+            trial.record(first, first ? 1010000 : 1090000);
+        }
+
+        assertTrue(trial.isDecided());
+        assertTrue(trial.useFirst());
+    }
+}
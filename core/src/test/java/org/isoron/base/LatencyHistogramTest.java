@@ -0,0 +1,66 @@
+package org.isoron.base;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class LatencyHistogramTest
+{
+    private static final long MILLIS = 1000000;
+
+    @Test
+    public void testPercentiles()
+    {
+        LatencyHistogram histogram = new LatencyHistogram(MILLIS, 100);
+
+        for (int i = 1; i <= 100; i++)
+            histogram.record(i * MILLIS - 1);
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(50 * MILLIS, histogram.getPercentileNanos(50));
+        assertEquals(99 * MILLIS, histogram.getPercentileNanos(99));
+        assertEquals(100 * MILLIS - 1, histogram.getPercentileNanos(100));
+    }
+
+    @Test
+    public void testOverflowReportsMaximum()
+    {
+        LatencyHistogram histogram = new LatencyHistogram(MILLIS, 10);
+        histogram.record(3 * MILLIS);
+        histogram.record(500 * MILLIS);
+
+        assertEquals(500 * MILLIS, histogram.getMaxNanos());
+        assertEquals(500 * MILLIS, histogram.getPercentileNanos(99));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileNanos(50));
+    }
+
+    @Test
+    public void testFrameMetricsCountsJank()
+    {
+        FrameMetrics metrics = new FrameMetrics();
+
+        metrics.onInput(1000);
+        metrics.onFrame(1010, 2 * MILLIS);
+
+        metrics.onInput(2000);
+        metrics.onFrame(2100, 20 * MILLIS);
+
+        metrics.onTick(3000);
+        metrics.onFrame(3050, MILLIS);
+
+        // The second frame is both slow and late, but counts once.
+        assertEquals(3, metrics.getFrames());
+        assertEquals(2, metrics.getJankyFrames());
+
+        metrics.onInput(4000);
+        metrics.onTick(4000);
+        metrics.reset();
+
+        metrics.onFrame(9000, MILLIS);
+        assertEquals(1, metrics.getFrames());
+        assertEquals(0, metrics.getJankyFrames());
+    }
+}
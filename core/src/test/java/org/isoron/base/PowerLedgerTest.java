@@ -0,0 +1,48 @@
+package org.isoron.base;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class PowerLedgerTest
+{
+    @Test
+    public void testSessionTotals()
+    {
+        PowerLedger ledger = new PowerLedger(4);
+
+        ledger.onAlarmWakeup();
+        ledger.startSession(1000, 50);
+        ledger.onAlarmWakeup();
+        ledger.onAlarmWakeup();
+        ledger.onWakeLock(5000);
+        ledger.onVibration(80);
+        ledger.onVibration(new long[]{0, 250, 250, 250});
+        ledger.endSession(61000, 170);
+
+        assertEquals(1, ledger.getSessionCount());
+        assertEquals(60000, ledger.getDurationMillis(0));
+        assertEquals(2, ledger.getAlarmWakeups(0));
+        assertEquals(5000, ledger.getWakeLockMillis(0));
+        assertEquals(580, ledger.getVibrationMillis(0));
+        assertEquals(120, ledger.getCpuMillis(0));
+    }
+
+    @Test
+    public void testRingKeepsNewestSessions()
+    {
+        PowerLedger ledger = new PowerLedger(3);
+
+        for (int i = 0; i < 5; i++)
+        {
+            ledger.startSession(i * 100, 0);
+            for (int j = 0; j < i; j++)
+                ledger.onAlarmWakeup();
+            ledger.endSession(i * 100 + 10, 0);
+        }
+
+        assertEquals(3, ledger.getSessionCount());
+        assertEquals(2, ledger.getAlarmWakeups(0));
+        assertEquals(4, ledger.getAlarmWakeups(2));
+    }
+}
@@ -0,0 +1,254 @@
+package org.isoron.simpletimer.history;
+
+import org.isoron.simpletimer.model.TimerSnapshot;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class HistoryStoreTest
+{
+    private static final long JAN = 1420070400000L;
+    private static final long FEB = 1422748800000L;
+
+    private static final Executor DIRECT = new Executor()
+    {
+        @Override
+        public void execute(Runnable command)
+        {
+            command.run();
+        }
+    };
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        directory = File.createTempFile("history", "");
+        directory.delete();
+    }
+
+    @After
+    public void tearDown()
+    {
+        File files[] = directory.listFiles();
+        if (files != null) for (File f : files)
+            f.delete();
+
+        directory.delete();
+    }
+
+    @Test
+    public void testStatsSurviveReopen() throws IOException
+    {
+        HistoryStore store = HistoryStore.open(directory, DIRECT);
+        run(store, JAN, 60000, 65000);
+        run(store, FEB, 60000, 60000);
+        run(store, FEB + 100000, 300000, 300000);
+        store.close();
+
+        HistoryStats stats = HistoryStore.open(directory, DIRECT).getStats();
+        assertEquals(3, stats.getStartCount());
+        assertEquals(3, stats.getCompleteCount());
+        assertEquals(420000, stats.getPlannedTime());
+        assertEquals(425000, stats.getActualTime());
+        assertEquals(-1, stats.getRunStart());
+
+        long top[] = new long[2];
+        assertEquals(2, stats.getTopDurations(top));
+        assertEquals(60000, top[0]);
+        assertEquals(300000, top[1]);
+
+        assertEquals(2, directory.list().length - 1);
+    }
+
+    @Test
+    public void testStatsCatchUpAfterLostWrite() throws IOException
+    {
+        HistoryStore store = HistoryStore.open(directory, DIRECT);
+        run(store, JAN, 60000, 60000);
+        store.close();
+
+        byte saved[] = readStats();
+
+        store = HistoryStore.open(directory, DIRECT);
+        run(store, JAN + 100000, 60000, 60000);
+        store.append(new HistoryRecord(HistoryRecord.TYPE_START, JAN + 200000, 10000, 0));
+        store.close();
+
+        // As if the app died after appending but before saving the stats.
+        writeStats(saved);
+
+        HistoryStats stats = HistoryStore.open(directory, DIRECT).getStats();
+        assertEquals(3, stats.getStartCount());
+        assertEquals(2, stats.getCompleteCount());
+        assertEquals(JAN + 200000, stats.getRunStart());
+    }
+
+    @Test
+    public void testTornTailIsIgnored() throws IOException
+    {
+        HistoryStore store = HistoryStore.open(directory, DIRECT);
+        run(store, JAN, 60000, 60000);
+        store.close();
+
+        new File(directory, "stats.bin").delete();
+        RandomAccessFile segment = new RandomAccessFile(new File(directory, "201501.log"), "rw");
+        segment.seek(segment.length());
+        segment.write(new byte[HistoryRecord.SIZE / 2]);
+        segment.close();
+
+        store = HistoryStore.open(directory, DIRECT);
+        assertEquals(1, store.getStats().getCompleteCount());
+
+        store.append(new HistoryRecord(HistoryRecord.TYPE_START, JAN + 1000, 10000, 0));
+        assertEquals(3, store.readRecent(10).size());
+    }
+
+    @Test
+    public void testRecorderDerivesEvents() throws IOException
+    {
+        HistoryStore store = HistoryStore.open(directory, DIRECT);
+        TimerSnapshot reset = TimerSnapshot.paused(60000, 60000);
+        HistoryRecorder recorder = new HistoryRecorder(store, reset);
+
+        recorder.onStateChanged(TimerSnapshot.running(60000, JAN + 60000), JAN);
+        recorder.onStateChanged(TimerSnapshot.paused(60000, 50000), JAN + 10000);
+        recorder.onStateChanged(TimerSnapshot.running(60000, JAN + 70000), JAN + 20000);
+        recorder.onTimeout(reset, JAN + 70000);
+        recorder.onStateChanged(reset, JAN + 70500);
+        recorder.onStateChanged(TimerSnapshot.paused(120000, 120000), JAN + 80000);
+        recorder.onStateChanged(TimerSnapshot.running(120000, JAN + 210000), JAN + 90000);
+        recorder.onStateChanged(TimerSnapshot.paused(120000, 120000), JAN + 100000);
+
+        List<HistoryRecord> records = store.readRecent(10);
+        int expected[] = {HistoryRecord.TYPE_RESET, HistoryRecord.TYPE_START,
+                HistoryRecord.TYPE_COMPLETE, HistoryRecord.TYPE_RESUME,
+                HistoryRecord.TYPE_PAUSE, HistoryRecord.TYPE_START};
+
+        assertEquals(expected.length, records.size());
+        for (int i = 0; i < expected.length; i++)
+            assertEquals(expected[i], records.get(i).getType());
+
+        assertEquals(70000, records.get(2).getElapsedTime());
+        assertEquals(10000, records.get(0).getElapsedTime());
+    }
+
+    @Test
+    public void testFailuresAreCounted() throws IOException
+    {
+        // A plain file where the directory should be.
+        new RandomAccessFile(directory, "rw").close();
+
+        HistoryStore store = HistoryStore.open(directory, DIRECT);
+        assertEquals(1, store.getFailureCount());
+
+        run(store, JAN, 60000, 60000);
+        assertEquals(3, store.getFailureCount());
+        assertNotNull(store.getLastFailure());
+        assertEquals(0, store.getStats().getStartCount());
+        store.close();
+    }
+
+    @Test
+    public void testStatsAreSnapshots() throws IOException
+    {
+        HistoryStore store = HistoryStore.open(directory, DIRECT);
+        run(store, JAN, 60000, 65000);
+
+        HistoryStats stats = store.getStats();
+        run(store, JAN + 100000, 60000, 60000);
+        assertEquals(1, stats.getStartCount());
+        assertEquals(65000, stats.getActualTime());
+
+        StringWriter out = new StringWriter();
+        store.dump(new PrintWriter(out), "");
+        assertTrue(out.toString().contains("runs=2 completed=2 reset=0 pauses=0"));
+        assertTrue(out.toString().contains("actual=125s"));
+        store.close();
+    }
+
+    @Test
+    public void testRecorderBeforeDeferredLoad() throws IOException
+    {
+        HistoryStore store = HistoryStore.open(directory, DIRECT);
+        store.append(new HistoryRecord(HistoryRecord.TYPE_START, JAN, 60000, 0));
+        store.close();
+
+        // The process died mid-run; the new store has not loaded yet when
+        // the recorder is built and the run ends.
+        DeferredExecutor executor = new DeferredExecutor();
+        store = HistoryStore.open(directory, executor);
+
+        TimerSnapshot running = TimerSnapshot.running(60000, JAN + 60000);
+        HistoryRecorder recorder = new HistoryRecorder(store, running);
+        recorder.onStateChanged(TimerSnapshot.paused(60000, 20000), JAN + 45000);
+        recorder.onTimeout(TimerSnapshot.paused(60000, 60000), JAN + 65000);
+        assertEquals(-1, store.getStats().getRunStart());
+
+        executor.runAll();
+
+        List<HistoryRecord> records = store.readRecent(10);
+        assertEquals(HistoryRecord.TYPE_COMPLETE, records.get(0).getType());
+        assertEquals(65000, records.get(0).getElapsedTime());
+        assertEquals(HistoryRecord.TYPE_PAUSE, records.get(1).getType());
+        assertEquals(45000, records.get(1).getElapsedTime());
+        assertEquals(65000, store.getStats().getActualTime());
+        store.close();
+    }
+
+    private void run(HistoryStore store, long start, long total, long actual)
+    {
+        store.append(new HistoryRecord(HistoryRecord.TYPE_START, start, total, 0));
+        store.append(new HistoryRecord(HistoryRecord.TYPE_COMPLETE, start + actual, total,
+                actual));
+    }
+
+    private static class DeferredExecutor implements Executor
+    {
+        private final List<Runnable> pending = new ArrayList<Runnable>();
+
+        @Override
+        public void execute(Runnable command)
+        {
+            pending.add(command);
+        }
+
+        void runAll()
+        {
+            for (int i = 0; i < pending.size(); i++)
+                pending.get(i).run();
+
+            pending.clear();
+        }
+    }
+
+    private byte[] readStats() throws IOException
+    {
+        RandomAccessFile file = new RandomAccessFile(new File(directory, "stats.bin"), "r");
+        byte data[] = new byte[(int) file.length()];
+        file.readFully(data);
+        file.close();
+        return data;
+    }
+
+    private void writeStats(byte data[]) throws IOException
+    {
+        RandomAccessFile file = new RandomAccessFile(new File(directory, "stats.bin"), "rw");
+        file.write(data);
+        file.close();
+    }
+}
@@ -0,0 +1,121 @@
+package org.isoron.simpletimer.history;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+
+public class QuickStartCacheTest
+{
+    private static final Executor DIRECT = new Executor()
+    {
+        @Override
+        public void execute(Runnable command)
+        {
+            command.run();
+        }
+    };
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        file = File.createTempFile("quickstart", "");
+        file.delete();
+    }
+
+    @After
+    public void tearDown()
+    {
+        file.delete();
+    }
+
+    @Test
+    public void testRanksByFrequencyAndPersists()
+    {
+        QuickStartCache cache = QuickStartCache.open(file, DIRECT, 3, null);
+
+        for (int i = 0; i < 5; i++)
+            cache.record(300000);
+        for (int i = 0; i < 3; i++)
+            cache.record(60000);
+        for (int i = 0; i < 8; i++)
+            cache.record(1500000);
+        cache.record(90000);
+
+        long top[] = new long[3];
+        assertEquals(3, cache.getDurations(top));
+        assertEquals(1500000, top[0]);
+        assertEquals(300000, top[1]);
+        assertEquals(60000, top[2]);
+
+        QuickStartCache reopened = QuickStartCache.open(file, DIRECT, 3, null);
+        long loaded[] = new long[3];
+        assertEquals(3, reopened.getDurations(loaded));
+        assertEquals(top[0], loaded[0]);
+        assertEquals(top[1], loaded[1]);
+        assertEquals(top[2], loaded[2]);
+    }
+
+    @Test
+    public void testRecentUseOvertakesOldHabits()
+    {
+        QuickStartCache cache = QuickStartCache.open(file, DIRECT, 1, null);
+
+        for (int i = 0; i < 200; i++)
+            cache.record(600000);
+        for (int i = 0; i < 2000; i++)
+            cache.record(120000);
+
+        long top[] = new long[1];
+        cache.getDurations(top);
+        assertEquals(120000, top[0]);
+    }
+
+    @Test
+    public void testRecordBeforeLoad()
+    {
+        QuickStartCache cache = QuickStartCache.open(file, DIRECT, 2, null);
+        cache.record(300000);
+        cache.record(300000);
+
+        final List<Runnable> pending = new ArrayList<Runnable>();
+        final int changes[] = new int[1];
+
+        cache = QuickStartCache.open(file, new Executor()
+        {
+            @Override
+            public void execute(Runnable command)
+            {
+                pending.add(command);
+            }
+        }, 2, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                changes[0]++;
+            }
+        });
+
+        cache.record(60000);
+        long top[] = new long[2];
+        assertEquals(0, cache.getDurations(top));
+
+        for (Runnable command : pending)
+            command.run();
+
+        assertEquals(2, changes[0]);
+        assertEquals(2, cache.getDurations(top));
+        assertEquals(300000, top[0]);
+        assertEquals(60000, top[1]);
+    }
+}
@@ -0,0 +1,204 @@
+package org.isoron.simpletimer.model;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SimpleTimerConcurrencyTest
+{
+    private static final int WRITERS = 8;
+    private static final int READERS = 4;
+    private static final int OPERATIONS = 20000;
+
+    @Test
+    public void testConcurrentIncrementsAreNotLost() throws Exception
+    {
+        final SimpleTimer timer = new SimpleTimer();
+        timer.setTotalTime(10 * 60000);
+
+        final CountingListener listener = new CountingListener();
+        timer.addListener(listener);
+
+        runConcurrently(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                for (int i = 0; i < OPERATIONS; i++)
+                    timer.increment(1);
+            }
+        }, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                TimerSnapshot snapshot = timer.getSnapshot();
+                assertFalse(snapshot.isRunning());
+                assertEquals(snapshot.getTotalTime(), snapshot.getRemainingTime(0));
+                assertEquals(0, snapshot.getTotalTime() % 60000);
+            }
+        });
+
+        long expected = 10 * 60000 + (long) WRITERS * OPERATIONS * 60000;
+        assertEquals(expected, timer.getTotalTime());
+        assertEquals(WRITERS * OPERATIONS, listener.stateChanges.get());
+    }
+
+    @Test
+    public void testConcurrentFlipsAreLinearizable() throws Exception
+    {
+        final SimpleTimer timer = new SimpleTimer();
+        timer.setTotalTime(60 * 60000);
+
+        final CountingListener listener = new CountingListener();
+        timer.addListener(listener);
+
+        runConcurrently(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                for (int i = 0; i < OPERATIONS; i++)
+                    timer.flip();
+            }
+        }, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                TimerSnapshot snapshot = timer.getSnapshot();
+                long remaining = snapshot.getRemainingTime(System.currentTimeMillis());
+
+                assertEquals(60 * 60000, snapshot.getTotalTime());
+                assertTrue(remaining >= 0);
+                assertTrue(remaining <= snapshot.getTotalTime());
+                assertEquals(snapshot.isRunning(), snapshot.getDeadline() >= 0);
+            }
+        });
+
+        // An even number of flips always lands back on the initial state.
+        assertTrue(timer.isPaused());
+        assertEquals(WRITERS * OPERATIONS, listener.stateChanges.get());
+    }
+
+    @Test
+    public void testTimeoutFiresExactlyOnce() throws Exception
+    {
+        for (int round = 0; round < 200; round++)
+        {
+            final SimpleTimer timer = new SimpleTimer();
+            timer.restore(true, System.currentTimeMillis() - 1, 60000, -1);
+
+            final CountingListener listener = new CountingListener();
+            timer.addListener(listener);
+
+            final AtomicInteger winners = new AtomicInteger();
+
+            runConcurrently(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    if (timer.checkTimeout()) winners.incrementAndGet();
+                }
+            }, null);
+
+            assertEquals(1, winners.get());
+            assertEquals(1, listener.timeouts.get());
+            assertTrue(timer.isPaused());
+            assertEquals(60000, timer.getRemainingTime());
+        }
+    }
+
+    private void runConcurrently(final Runnable writer, final Runnable reader)
+            throws Exception
+    {
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicBoolean done = new AtomicBoolean(false);
+        final AtomicInteger failures = new AtomicInteger();
+
+        Thread writers[] = new Thread[WRITERS];
+        for (int i = 0; i < WRITERS; i++)
+        {
+            writers[i] = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    await(start);
+                    writer.run();
+                }
+            });
+            writers[i].start();
+        }
+
+        Thread readers[] = new Thread[reader == null ? 0 : READERS];
+        for (int i = 0; i < readers.length; i++)
+        {
+            readers[i] = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    await(start);
+                    try
+                    {
+                        while (!done.get())
+                            reader.run();
+                    }
+                    catch (AssertionError e)
+                    {
+                        failures.incrementAndGet();
+                    }
+                }
+            });
+            readers[i].start();
+        }
+
+        start.countDown();
+        for (Thread t : writers)
+            t.join();
+
+        done.set(true);
+        for (Thread t : readers)
+            t.join();
+
+        assertEquals("reader invariant violations", 0, failures.get());
+    }
+
+    private static void await(CountDownLatch latch)
+    {
+        try
+        {
+            latch.await();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class CountingListener extends SimpleTimerAdapter
+    {
+        final AtomicInteger timeouts = new AtomicInteger();
+        final AtomicInteger stateChanges = new AtomicInteger();
+
+        @Override
+        public void onTimeout(long lateness)
+        {
+            timeouts.incrementAndGet();
+        }
+
+        @Override
+        public void onStateChanged()
+        {
+            stateChanges.incrementAndGet();
+        }
+    }
+}
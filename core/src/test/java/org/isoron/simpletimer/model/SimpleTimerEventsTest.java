@@ -0,0 +1,181 @@
+package org.isoron.simpletimer.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SimpleTimerEventsTest
+{
+    @Test
+    public void testTypedEvents()
+    {
+        SimpleTimer timer = new SimpleTimer();
+        RecordingListener listener = new RecordingListener();
+        timer.addListener(listener);
+
+        timer.setTotalTime(60000);
+        timer.resume();
+        timer.flip();
+        timer.flip();
+        timer.pause();
+        timer.reset();
+        timer.increment(1);
+
+        assertEquals("duration started paused started paused reset duration ",
+                listener.events.toString());
+        assertEquals(7, listener.stateChanges);
+        assertEquals(70000, listener.last.getTotalTime());
+        assertFalse(listener.last.isRunning());
+    }
+
+    @Test
+    public void testTimeoutIsFollowedByReset()
+    {
+        SimpleTimer timer = new SimpleTimer();
+        timer.restore(true, System.currentTimeMillis() - 500, 60000, 0);
+
+        RecordingListener listener = new RecordingListener();
+        timer.addListener(listener);
+
+        assertTrue(timer.checkTimeout());
+        assertEquals("timeout reset ", listener.events.toString());
+        assertEquals(1, listener.stateChanges);
+        assertEquals(60000, listener.last.getRemainingTime(0));
+    }
+
+    @Test
+    public void testSeveralListenersInOrder()
+    {
+        SimpleTimer timer = new SimpleTimer();
+        StringBuilder log = new StringBuilder();
+
+        OrderListener first = new OrderListener(log, "a");
+        OrderListener second = new OrderListener(log, "b");
+        OrderListener third = new OrderListener(log, "c");
+        timer.addListener(first);
+        timer.addListener(second);
+        timer.addListener(third);
+
+        timer.resume();
+        assertEquals("abc", log.toString());
+
+        timer.removeListener(second);
+        timer.removeListener(second);
+        timer.pause();
+        assertEquals("abcac", log.toString());
+
+        timer.removeListener(first);
+        timer.removeListener(third);
+        timer.resume();
+        assertEquals("abcac", log.toString());
+    }
+
+    @Test
+    public void testSecondTicksComeFromTheDeadline()
+    {
+        SimpleTimer timer = new SimpleTimer();
+        RecordingListener listener = new RecordingListener();
+        RecordingListener plain = new RecordingListener();
+        timer.addListener(plain);
+        assertFalse(timer.hasTickListeners());
+
+        timer.addTickListener(listener);
+        assertTrue(timer.hasTickListeners());
+
+        timer.dispatchSecondTick();
+        assertEquals(-1, timer.getMillisecondsUntilNextSecond());
+        assertEquals("", listener.events.toString());
+
+        timer.restore(true, System.currentTimeMillis() + 10500, 60000, 0);
+
+        long delay = timer.getMillisecondsUntilNextSecond();
+        assertTrue(delay > 0 && delay <= 1000);
+
+        timer.dispatchSecondTick();
+        timer.dispatchSecondTick();
+        assertEquals("tick ", listener.events.toString());
+        assertTrue(listener.seconds == 10 || listener.seconds == 9);
+        assertEquals(0, listener.stateChanges);
+        assertEquals("", plain.events.toString());
+
+        timer.removeTickListener(listener);
+        assertFalse(timer.hasTickListeners());
+    }
+
+    private static class RecordingListener extends SimpleTimerAdapter
+    {
+        final StringBuilder events = new StringBuilder();
+        TimerSnapshot last;
+        int stateChanges;
+        long seconds;
+
+        @Override
+        public void onStarted(TimerSnapshot snapshot)
+        {
+            record("started", snapshot);
+        }
+
+        @Override
+        public void onPaused(TimerSnapshot snapshot)
+        {
+            record("paused", snapshot);
+        }
+
+        @Override
+        public void onReset(TimerSnapshot snapshot)
+        {
+            record("reset", snapshot);
+        }
+
+        @Override
+        public void onDurationChanged(TimerSnapshot snapshot)
+        {
+            record("duration", snapshot);
+        }
+
+        @Override
+        public void onSecondTick(TimerSnapshot snapshot, long remainingSeconds)
+        {
+            seconds = remainingSeconds;
+            record("tick", snapshot);
+        }
+
+        @Override
+        public void onTimeout(long lateness)
+        {
+            events.append("timeout ");
+        }
+
+        @Override
+        public void onStateChanged()
+        {
+            stateChanges++;
+        }
+
+        private void record(String event, TimerSnapshot snapshot)
+        {
+            events.append(event).append(' ');
+            last = snapshot;
+        }
+    }
+
+    private static class OrderListener extends SimpleTimerAdapter
+    {
+        private final StringBuilder log;
+        private final String name;
+
+        OrderListener(StringBuilder log, String name)
+        {
+            this.log = log;
+            this.name = name;
+        }
+
+        @Override
+        public void onStateChanged()
+        {
+            log.append(name);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.isoron.simpletimer.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StopwatchTest
+{
+    private static final long SECOND = 1000000000L;
+
+    @Test
+    public void testElapsedAcrossStops()
+    {
+        Stopwatch stopwatch = new Stopwatch();
+        assertEquals(0, stopwatch.getElapsed(5 * SECOND));
+
+        stopwatch.start(10 * SECOND);
+        assertTrue(stopwatch.isRunning());
+        assertEquals(3 * SECOND, stopwatch.getElapsed(13 * SECOND));
+
+        stopwatch.stop(14 * SECOND);
+        assertEquals(4 * SECOND, stopwatch.getElapsed(100 * SECOND));
+
+        stopwatch.flip(200 * SECOND);
+        assertEquals(6 * SECOND, stopwatch.getElapsed(202 * SECOND));
+
+        stopwatch.reset();
+        assertFalse(stopwatch.isRunning());
+        assertEquals(0, stopwatch.getElapsed(300 * SECOND));
+    }
+
+    @Test
+    public void testLapsAndSplits()
+    {
+        Stopwatch stopwatch = new Stopwatch();
+        stopwatch.start(0);
+
+        assertEquals(1, stopwatch.getLapNumber());
+        assertEquals(10 * SECOND, stopwatch.lap(10 * SECOND));
+        assertEquals(20 * SECOND, stopwatch.lap(30 * SECOND));
+        assertEquals(5 * SECOND, stopwatch.lap(35 * SECOND));
+
+        assertEquals(4, stopwatch.getLapNumber());
+        assertEquals(35 * SECOND, stopwatch.getLastSplit());
+        assertEquals(2 * SECOND, stopwatch.getCurrentLap(37 * SECOND));
+
+        LapBuffer laps = stopwatch.getLaps();
+        assertEquals(3, laps.size());
+        assertEquals(5 * SECOND, laps.getMin());
+        assertEquals(20 * SECOND, laps.getMax());
+        assertEquals(35 * SECOND / 3, laps.getMean());
+        assertEquals(5 * SECOND, laps.getLast());
+
+        stopwatch.reset();
+        assertEquals(0, laps.size());
+        assertEquals(1, stopwatch.getLapNumber());
+    }
+
+    @Test
+    public void testMinutesFromElapsedTime()
+    {
+        Stopwatch stopwatch = new Stopwatch();
+        assertEquals(-1, stopwatch.getMillisecondsUntilNextMinute(0));
+
+        stopwatch.start(0);
+        assertEquals(50001, stopwatch.getMillisecondsUntilNextMinute(70 * SECOND));
+    }
+
+    @Test
+    public void testLapBufferGrowsThenOverwrites()
+    {
+        LapBuffer laps = new LapBuffer(40);
+
+        for (int i = 1; i <= 100; i++)
+            laps.add(i);
+
+        assertEquals(40, laps.size());
+        assertEquals(100, laps.getCount());
+        assertEquals(61, laps.get(0));
+        assertEquals(100, laps.getLast());
+        assertEquals(1, laps.getMin());
+        assertEquals(100, laps.getMax());
+        assertEquals(50, laps.getMean());
+
+        try
+        {
+            laps.get(40);
+            fail("lap 40");
+        }
+        catch (IndexOutOfBoundsException e)
+        {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package org.isoron.simpletimer.model;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimerEngineTest
+{
+    private static final long START = 1500000000000L;
+
+    private TimerEngine engine;
+    private RecordingListener listener;
+
+    @Before
+    public void setUp()
+    {
+        engine = new TimerEngine(START);
+        listener = new RecordingListener();
+        engine.setListener(listener);
+    }
+
+    @Test
+    public void testWakeupIsTheEarliestDeadline()
+    {
+        assertEquals(-1, engine.getNextWakeup());
+
+        engine.add(START + 90000);
+        assertEquals(START + 90000, engine.getNextWakeup());
+
+        long early = engine.add(START + 1234);
+        engine.add(START + 5000000);
+        assertEquals(START + 1234, engine.getNextWakeup());
+        assertEquals(START + 1234, listener.wakeup);
+
+        engine.advance(START + 1233);
+        assertEquals("", listener.expired.toString());
+        assertTrue(engine.isActive(early));
+
+        engine.advance(START + 1234);
+        assertEquals("1234 ", listener.expired.toString());
+        assertEquals(START + 1234, listener.lastNow);
+        assertFalse(engine.isActive(early));
+        assertEquals(START + 90000, engine.getNextWakeup());
+        assertEquals(2, engine.size());
+    }
+
+    @Test
+    public void testTimersCascadeAcrossLevels()
+    {
+        // Deadlines far enough apart to start out in four different levels.
+        long deadlines[] = { 40, 3000, 200000, 20000000 };
+
+        for (int i = deadlines.length - 1; i >= 0; i--)
+            engine.add(START + deadlines[i]);
+
+        for (int i = 0; i < deadlines.length; i++)
+        {
+            long wakeup = engine.getNextWakeup();
+            assertEquals(START + deadlines[i], wakeup);
+            engine.advance(wakeup);
+        }
+
+        assertEquals("40 3000 200000 20000000 ", listener.expired.toString());
+        assertEquals(-1, engine.getNextWakeup());
+        assertEquals(0, engine.size());
+    }
+
+    @Test
+    public void testCancel()
+    {
+        long first = engine.add(START + 100);
+        long second = engine.add(START + 70000);
+        long third = engine.add(START + 70500);
+
+        assertTrue(engine.cancel(first));
+        assertFalse(engine.cancel(first));
+        assertEquals(START + 70000, engine.getNextWakeup());
+
+        // The earliest timer left sits in a higher level.
+        assertTrue(engine.cancel(second));
+        assertEquals(START + 70500, engine.getNextWakeup());
+        assertEquals(-1, engine.getDeadline(second));
+        assertEquals(START + 70500, engine.getDeadline(third));
+
+        // A released index is reused, but old handles stay dead.
+        long fourth = engine.add(START + 200);
+        assertFalse(engine.isActive(first));
+        assertTrue(engine.isActive(fourth));
+
+        engine.advance(START + 100000);
+        assertEquals("200 70500 ", listener.expired.toString());
+
+        assertTrue(engine.cancel(engine.add(START + 200000)));
+        assertEquals(-1, engine.getNextWakeup());
+        assertEquals(0, engine.size());
+    }
+
+    @Test
+    public void testManyExpiriesInOneTick()
+    {
+        for (int i = 0; i < 1000; i++)
+            engine.add(START + 500 + i % 3);
+
+        for (int i = 0; i < 1000; i++)
+            engine.add(START + 60000);
+
+        engine.advance(START + 502);
+        assertEquals(1000, listener.count);
+        assertEquals(START + 60000, engine.getNextWakeup());
+
+        // A late wakeup still delivers everything due, in one call.
+        engine.advance(START + 65000);
+        assertEquals(2000, listener.count);
+        assertEquals(START + 65000, listener.lastNow);
+        assertEquals(-1, engine.getNextWakeup());
+        assertEquals(0, engine.size());
+    }
+
+    private static class RecordingListener implements TimerEngineListener
+    {
+        final StringBuilder expired = new StringBuilder();
+        long wakeup = -1;
+        long lastNow;
+        int count;
+
+        @Override
+        public void onTimerExpired(long timer, long deadline, long now)
+        {
+            if (count++ < 10) expired.append(deadline - START).append(' ');
+            lastNow = now;
+        }
+
+        @Override
+        public void onWakeupChanged(long wakeupTime)
+        {
+            wakeup = wakeupTime;
+        }
+    }
+}
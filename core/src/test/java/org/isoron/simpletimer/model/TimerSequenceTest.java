@@ -0,0 +1,78 @@
+package org.isoron.simpletimer.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class TimerSequenceTest
+{
+    @Test
+    public void testParseAndCompile()
+    {
+        TimerSequence sequence = TimerSequence.parse("work 25m, short rest 1m30s x4");
+
+        assertEquals(8, sequence.getPhaseCount());
+        assertEquals(4 * (25 * 60000 + 90000), sequence.getTotalTime());
+        assertEquals(25 * 60000, sequence.getPhaseEnd(0));
+        assertEquals("short rest", sequence.getStepName(3));
+        assertEquals(2, sequence.getRound(3));
+        assertEquals(4, sequence.getRoundCount());
+
+        TimerSequence single = TimerSequence.parse("90");
+        assertEquals(1, single.getPhaseCount());
+        assertEquals(90000, single.getTotalTime());
+        assertEquals("", single.getStepName(0));
+
+        TimerSequence relax = TimerSequence.parse("relax 10");
+        assertEquals(1, relax.getRoundCount());
+        assertEquals(10000, relax.getTotalTime());
+        assertEquals("relax", relax.getStepName(0));
+
+        TimerSequence boxes = TimerSequence.parse("box jumps 45s, relax 15s x3");
+        assertEquals(3, boxes.getRoundCount());
+        assertEquals(6, boxes.getPhaseCount());
+        assertEquals("box jumps", boxes.getStepName(0));
+        assertEquals("relax", boxes.getStepName(5));
+
+        TimerSequence longest = TimerSequence.parse("a 1s, b 1s x500");
+        assertEquals(TimerSequence.MAX_PHASES, longest.getPhaseCount());
+    }
+
+    @Test
+    public void testRejectsBadSpecs()
+    {
+        String specs[] = {"work 5q", "", "work 5m x0", "rest m", "work 5mx4", "x4",
+                "a 1s, b 1s x501", "a 1s, b 1s x1073741824", "a 1s x99999999999"};
+
+        for (String spec : specs)
+        {
+            try
+            {
+                TimerSequence.parse(spec);
+                fail(spec);
+            }
+            catch (IllegalArgumentException e)
+            {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testFindPhaseFromSnapshot()
+    {
+        TimerSequence sequence = TimerSequence.parse("work 20s, rest 10s x8");
+        TimerSnapshot snapshot = TimerSnapshot.running(sequence.getTotalTime(), 240000);
+
+        long start = 240000 - sequence.getTotalTime();
+        assertEquals(0, sequence.findPhase(snapshot, start, 0));
+        assertEquals(1, sequence.findPhase(snapshot, start + 20000, 0));
+        assertEquals(3, sequence.findPhase(snapshot, start + 59999, 1));
+        assertEquals(2, sequence.findPhase(snapshot, start + 45000, 7));
+        assertEquals(15, sequence.findPhase(snapshot, 300000, 0));
+
+        assertEquals(start + 50000, sequence.getPhaseDeadline(snapshot, 2));
+        assertEquals(-1, sequence.getPhaseDeadline(TimerSnapshot.paused(1, 1), 0));
+    }
+}
@@ -0,0 +1,113 @@
+package org.isoron.simpletimer.model;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimerStateJournalTest
+{
+    private static final int RECORD_SIZE = 40;
+
+    private static final Executor DIRECT = new Executor()
+    {
+        @Override
+        public void execute(Runnable command)
+        {
+            command.run();
+        }
+    };
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        file = File.createTempFile("timer", ".journal");
+    }
+
+    @After
+    public void tearDown()
+    {
+        file.delete();
+    }
+
+    @Test
+    public void testTornNewestRecordFallsBackToOlder() throws IOException
+    {
+        saveTwoStates();
+
+        // The second save went to the first record; tear it.
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(20);
+        raf.writeLong(12345);
+        raf.close();
+
+        SimpleTimer timer = restore();
+        assertEquals(60000, timer.getTotalTime());
+        assertEquals(45000, timer.getRemainingTime());
+    }
+
+    @Test
+    public void testZeroedFileRestoresNothing() throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.write(new byte[2 * RECORD_SIZE]);
+        raf.close();
+
+        SimpleTimer timer = new SimpleTimer();
+        long total = timer.getTotalTime();
+
+        assertFalse(TimerStateJournal.open(file, DIRECT).restore(timer));
+        assertEquals(total, timer.getTotalTime());
+    }
+
+    @Test
+    public void testTruncatedFile() throws IOException
+    {
+        saveTwoStates();
+
+        // Cutting into the second record leaves the newest one whole.
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(RECORD_SIZE + RECORD_SIZE / 2);
+        raf.close();
+
+        SimpleTimer timer = restore();
+        assertEquals(90000, timer.getTotalTime());
+        assertEquals(30000, timer.getRemainingTime());
+
+        // Once both records are cut there is nothing left to trust.
+        raf = new RandomAccessFile(file, "rw");
+        raf.setLength(RECORD_SIZE / 2);
+        raf.close();
+
+        assertFalse(TimerStateJournal.open(file, DIRECT).restore(new SimpleTimer()));
+    }
+
+    private void saveTwoStates() throws IOException
+    {
+        TimerStateJournal journal = TimerStateJournal.open(file, DIRECT);
+        SimpleTimer timer = new SimpleTimer();
+
+        timer.restore(false, -1, 60000, 45000);
+        journal.save(timer);
+
+        timer.restore(false, -1, 90000, 30000);
+        journal.save(timer);
+    }
+
+    private SimpleTimer restore() throws IOException
+    {
+        SimpleTimer timer = new SimpleTimer();
+        assertTrue(TimerStateJournal.open(file, DIRECT).restore(timer));
+        return timer;
+    }
+}
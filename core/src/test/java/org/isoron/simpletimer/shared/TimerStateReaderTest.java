@@ -0,0 +1,111 @@
+package org.isoron.simpletimer.shared;
+
+import org.isoron.simpletimer.model.TimerSnapshot;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TimerStateReaderTest
+{
+    private File file;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        file = File.createTempFile("timer", ".state");
+    }
+
+    @After
+    public void tearDown()
+    {
+        file.delete();
+    }
+
+    @Test
+    public void testReaderSeesPublishedSnapshots() throws IOException
+    {
+        TimerStateWriter writer = TimerStateWriter.open(file);
+        TimerStateReader reader = openReader();
+        assertNull(reader.read());
+
+        writer.write(TimerSnapshot.running(60000, 1500000000000L));
+        TimerSnapshot snapshot = reader.read();
+        assertTrue(snapshot.isRunning());
+        assertEquals(1500000000000L, snapshot.getDeadline());
+        assertEquals(60000, snapshot.getTotalTime());
+
+        // Unchanged regions hand back the same snapshot.
+        assertTrue(snapshot == reader.read());
+
+        writer.write(TimerSnapshot.paused(60000, 25000));
+        snapshot = reader.read();
+        assertFalse(snapshot.isRunning());
+        assertEquals(25000, snapshot.getRemainingTime(0));
+        assertEquals(writer.getSequence(), reader.getSequence());
+    }
+
+    @Test
+    public void testWriteInProgressKeepsPreviousSnapshot() throws IOException
+    {
+        TimerStateWriter writer = TimerStateWriter.open(file);
+        writer.write(TimerSnapshot.paused(30000, 30000));
+
+        TimerStateReader reader = openReader();
+        TimerSnapshot before = reader.read();
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(SharedTimerState.OFFSET_SEQUENCE);
+        raf.writeLong(writer.getSequence() + 1);
+        raf.seek(SharedTimerState.OFFSET_TOTAL);
+        raf.writeLong(45000);
+        raf.close();
+
+        assertTrue(before == reader.read());
+
+        // A stable sequence with fields that do not match the checksum is
+        // not trusted either.
+        raf = new RandomAccessFile(file, "rw");
+        raf.seek(SharedTimerState.OFFSET_SEQUENCE);
+        raf.writeLong(writer.getSequence() + 2);
+        raf.close();
+
+        assertTrue(before == reader.read());
+    }
+
+    @Test
+    public void testWriterContinuesExistingSequence() throws IOException
+    {
+        TimerStateWriter writer = TimerStateWriter.open(file);
+        writer.write(TimerSnapshot.paused(30000, 30000));
+        long sequence = writer.getSequence();
+
+        TimerStateWriter reopened = TimerStateWriter.open(file);
+        reopened.write(TimerSnapshot.paused(40000, 40000));
+        assertEquals(sequence + 2, reopened.getSequence());
+        assertEquals(40000, openReader().read().getTotalTime());
+    }
+
+    private TimerStateReader openReader() throws IOException
+    {
+        FileInputStream stream = new FileInputStream(file);
+
+        try
+        {
+            return TimerStateReader.map(stream.getFD());
+        }
+        finally
+        {
+            stream.close();
+        }
+    }
+}
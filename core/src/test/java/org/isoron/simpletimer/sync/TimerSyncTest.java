@@ -0,0 +1,206 @@
+package org.isoron.simpletimer.sync;
+
+import org.isoron.simpletimer.model.SimpleTimer;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimerSyncTest
+{
+    private static final long SKEW = 5000;
+    private static final long LATENCY = 30;
+
+    private SimpleTimer timer;
+    private LoopbackTransport toClient;
+    private LoopbackTransport toServer;
+    private TimerSyncServer server;
+    private TimerSyncClient client;
+
+    @Before
+    public void setUp()
+    {
+        timer = new SimpleTimer();
+        timer.setTotalTime(5 * 60000);
+
+        toClient = new LoopbackTransport();
+        toServer = new LoopbackTransport();
+        server = new TimerSyncServer(timer, toClient);
+        client = new TimerSyncClient(toServer);
+        toClient.setReceiver(client);
+        toServer.setReceiver(server);
+    }
+
+    @Test
+    public void testHelloSyncsFullStateAndClock()
+    {
+        handshake();
+
+        assertTrue(client.isSynced());
+        assertFalse(client.isRunning());
+        assertEquals(5 * 60000, client.getTotalTime());
+        assertEquals(5 * 60000, client.getRemainingTime(phoneTime()));
+
+        assertTrue(client.hasClockOffset());
+        assertEquals(2 * LATENCY, client.getRoundTripDelay(), 5);
+        assertEquals(SKEW, client.getClockOffset(), 5);
+    }
+
+    @Test
+    public void testRapidChangesAreBatched()
+    {
+        handshake();
+        int before = toClient.getMessageCount();
+
+        assertTrue(server.onStateChanged());
+        for (int i = 0; i < 10; i++)
+        {
+            timer.increment(1);
+            assertFalse(server.onStateChanged());
+        }
+
+        server.flush(watchTime());
+        assertEquals(before + 1, toClient.getMessageCount());
+
+        toClient.deliver(phoneTime());
+        assertEquals(timer.getTotalTime(), client.getTotalTime());
+    }
+
+    @Test
+    public void testDeltaCarriesOnlyChangedFields()
+    {
+        handshake();
+
+        timer.increment(1);
+        server.flush(watchTime());
+
+        SyncMessage message = new SyncMessage();
+        toClient.setReceiver(new Recorder(message));
+        toClient.deliver(phoneTime());
+
+        int fields = message.mask & ~SyncMessage.FIELD_ECHO;
+        assertEquals(SyncMessage.FIELD_TOTAL | SyncMessage.FIELD_REMAINING, fields);
+
+        server.flush(watchTime());
+        assertEquals(0, toClient.getPendingCount());
+    }
+
+    @Test
+    public void testCommandsAndRemainingTimeAcrossSkew()
+    {
+        handshake();
+
+        client.resume(phoneTime());
+        toServer.deliver(watchTime());
+        assertTrue(timer.isRunning());
+
+        toClient.deliver(phoneTime());
+        assertTrue(client.isRunning());
+
+        long expected = timer.getRemainingTime();
+        assertEquals(expected, client.getRemainingTime(phoneTime()), 2 * LATENCY);
+
+        client.pause(phoneTime());
+        toServer.deliver(watchTime());
+        toClient.deliver(phoneTime());
+        assertFalse(client.isRunning());
+        assertEquals(timer.getRemainingTime(), client.getRemainingTime(phoneTime()));
+    }
+
+    @Test
+    public void testLostDeltaTriggersResync()
+    {
+        handshake();
+
+        timer.increment(1);
+        server.flush(watchTime());
+        toClient.discard();
+
+        timer.increment(1);
+        server.flush(watchTime());
+        toClient.deliver(phoneTime());
+
+        assertEquals(1, toServer.getPendingCount());
+        toServer.deliver(watchTime());
+        toClient.deliver(phoneTime());
+
+        assertEquals(timer.getTotalTime(), client.getTotalTime());
+        assertEquals(timer.getRemainingTime(), client.getRemainingTime(phoneTime()));
+    }
+
+    @Test
+    public void testRecreatedClientStartsNewSession()
+    {
+        handshake();
+        for (int i = 0; i < 5; i++)
+        {
+            client.increment(1, phoneTime());
+            toServer.deliver(watchTime());
+        }
+        toClient.deliver(phoneTime());
+
+        // The phone activity was recreated and numbers its messages from zero.
+        client = new TimerSyncClient(toServer);
+        toClient.setReceiver(client);
+        handshake();
+
+        assertTrue(client.isSynced());
+        assertEquals(timer.getTotalTime(), client.getTotalTime());
+
+        client.resume(phoneTime());
+        toServer.deliver(watchTime());
+        assertTrue(timer.isRunning());
+        assertEquals(0, server.getDroppedCount());
+    }
+
+    @Test
+    public void testMalformedMessagesAreDropped()
+    {
+        client.onMessage(new byte[0], phoneTime());
+        client.onMessage(new byte[]{0x12, 0}, phoneTime());
+        client.onMessage(new byte[]{(byte) 0xf2, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0},
+                phoneTime());
+
+        assertEquals(3, client.getDroppedCount());
+        assertFalse(client.isSynced());
+    }
+
+    private void handshake()
+    {
+        long sent = phoneTime();
+        client.connect(sent);
+
+        // Both legs take LATENCY; the watch replies as soon as it receives.
+        toServer.deliver(sent + SKEW + LATENCY);
+        toClient.deliver(sent + 2 * LATENCY);
+    }
+
+    private long watchTime()
+    {
+        return System.currentTimeMillis();
+    }
+
+    private long phoneTime()
+    {
+        return System.currentTimeMillis() - SKEW;
+    }
+
+    private static class Recorder extends SyncPeer
+    {
+        private final SyncMessage target;
+
+        Recorder(SyncMessage target)
+        {
+            super(null);
+            this.target = target;
+        }
+
+        @Override
+        protected void onReceive(SyncMessage message, boolean gap, long now)
+        {
+            target.mask = message.mask;
+        }
+    }
+}
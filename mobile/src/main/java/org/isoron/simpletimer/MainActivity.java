@@ -2,20 +2,132 @@ package org.isoron.simpletimer;
 
 import android.app.Activity;
 import android.os.Bundle;
+import android.os.Handler;
 import android.view.Menu;
 import android.view.MenuItem;
+import android.view.View;
+import android.widget.Button;
+import android.widget.TextView;
 
+import org.isoron.simpletimer.sync.MessageApiTransport;
+import org.isoron.simpletimer.sync.TimerSyncClient;
+import org.isoron.simpletimer.sync.TimerSyncListener;
 
-public class MainActivity extends Activity
+
+/**
+ * Remote control for the timer running on the watch. The watch only sends
+ * state changes; the remaining time shown here is computed locally from the
+ * watch deadline and the estimated clock offset between the two devices.
+ */
+public class MainActivity extends Activity implements TimerSyncListener
 {
+    private Handler handler;
+    private MessageApiTransport transport;
+    private TimerSyncClient client;
+
+    private TextView remainingView;
+    private Button startPauseButton;
 
     @Override
     protected void onCreate(Bundle savedInstanceState)
     {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
+
+        handler = new Handler();
+        transport = new MessageApiTransport(this);
+        client = new TimerSyncClient(transport);
+        client.setListener(this);
+        transport.setReceiver(client);
+        transport.setReadyCallback(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                client.connect(System.currentTimeMillis());
+            }
+        });
+
+        remainingView = (TextView) findViewById(R.id.remaining);
+        startPauseButton = (Button) findViewById(R.id.start_pause);
+        startPauseButton.setOnClickListener(new View.OnClickListener()
+        {
+            @Override
+            public void onClick(View v)
+            {
+                if (client.isRunning()) client.pause(System.currentTimeMillis());
+                else client.resume(System.currentTimeMillis());
+            }
+        });
+
+        findViewById(R.id.reset).setOnClickListener(new View.OnClickListener()
+        {
+            @Override
+            public void onClick(View v)
+            {
+                client.reset(System.currentTimeMillis());
+            }
+        });
+
+        findViewById(R.id.increment).setOnClickListener(new View.OnClickListener()
+        {
+            @Override
+            public void onClick(View v)
+            {
+                client.increment(1, System.currentTimeMillis());
+            }
+        });
+
+        findViewById(R.id.decrement).setOnClickListener(new View.OnClickListener()
+        {
+            @Override
+            public void onClick(View v)
+            {
+                client.increment(-1, System.currentTimeMillis());
+            }
+        });
+    }
+
+    @Override
+    protected void onStart()
+    {
+        super.onStart();
+        transport.connect();
+    }
+
+    @Override
+    protected void onStop()
+    {
+        super.onStop();
+        handler.removeCallbacks(refresh);
+        transport.disconnect();
     }
 
+    @Override
+    public void onRemoteStateChanged()
+    {
+        startPauseButton.setText(client.isRunning() ? R.string.pause : R.string.start);
+        handler.removeCallbacks(refresh);
+        refresh.run();
+    }
+
+    private final Runnable refresh = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            if (!client.isSynced()) return;
+
+            long remaining = client.getRemainingTime(System.currentTimeMillis());
+            long seconds = (remaining + 999) / 1000;
+            remainingView.setText(String.format("%02d:%02d", seconds / 60, seconds % 60));
+
+            // Redraw when the displayed second changes, not on a fixed period.
+            if (client.isRunning() && remaining > 0)
+                handler.postDelayed(this, (remaining - 1) % 1000 + 1);
+        }
+    };
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu)
     {
@@ -0,0 +1,60 @@
+package org.isoron.simpletimer;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.test.InstrumentationTestCase;
+
+import org.isoron.simpletimer.shared.TimerStateProvider;
+
+public class TimerStateProviderTest extends InstrumentationTestCase
+{
+    private static final long TIMEOUT = 5000;
+
+    public void testQueryFromBackgroundThreadWithColdRuntime() throws Throwable
+    {
+        final Context context = getInstrumentation().getTargetContext();
+        final Cursor cursors[] = new Cursor[1];
+        final Throwable errors[] = new Throwable[1];
+
+        TimerRuntime.releaseForTesting();
+
+        // A plain thread has no Looper, like a binder thread.
+        Thread thread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    cursors[0] = context.getContentResolver().query(
+                            TimerStateProvider.CONTENT_URI, null, null, null, null);
+                }
+                catch (Throwable t)
+                {
+                    errors[0] = t;
+                }
+            }
+        });
+
+        thread.start();
+        thread.join(TIMEOUT);
+
+        if (errors[0] != null) throw errors[0];
+        assertNotNull("query returned no cursor", cursors[0]);
+
+        try
+        {
+            Cursor cursor = cursors[0];
+            assertEquals(1, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+
+            int total = cursor.getColumnIndexOrThrow(TimerStateProvider.COLUMN_TOTAL);
+            assertEquals(TimerRuntime.get(context).getTimer().getTotalTime(),
+                    cursor.getLong(total));
+        }
+        finally
+        {
+            cursors[0].close();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package org.isoron.simpletimer.views;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Bundle;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.support.wearable.activity.WearableActivity;
+import android.test.ActivityInstrumentationTestCase2;
+
+import org.isoron.simpletimer.MainActivity;
+import org.isoron.simpletimer.model.SimpleTimer;
+import org.isoron.simpletimer.model.Stopwatch;
+
+public class TimerViewAllocationTest extends ActivityInstrumentationTestCase2<MainActivity>
+{
+    private static final int SIZE = 320;
+    private static final int WARMUP_FRAMES = 10;
+    private static final int MEASURED_FRAMES = 120;
+
+    public TimerViewAllocationTest()
+    {
+        super(MainActivity.class);
+    }
+
+    public void testOnDrawDoesNotAllocate() throws Throwable
+    {
+        final int allocations[] = new int[1];
+
+        runTestOnUiThread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                SimpleTimer timer = new SimpleTimer();
+                timer.setTotalTime(75 * 60 * 1000);
+
+                TimerView view = new TimerView(getActivity(), null);
+                view.setTimer(timer);
+                view.layout(0, 0, SIZE, SIZE);
+
+                Bitmap bitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+                Canvas canvas = new Canvas(bitmap);
+
+                allocations[0] += countAllocations(view, canvas);
+
+                timer.resume();
+                allocations[0] += countAllocations(view, canvas);
+
+                Bundle ambientDetails = new Bundle();
+                ambientDetails.putBoolean(WearableActivity.EXTRA_LOWBIT_AMBIENT, true);
+                ambientDetails.putBoolean(WearableActivity.EXTRA_BURN_IN_PROTECTION, true);
+                view.onEnterAmbient(ambientDetails);
+                allocations[0] += countAllocations(view, canvas);
+
+                view.onExitAmbient();
+                timer.reset();
+
+                Stopwatch stopwatch = new Stopwatch();
+                stopwatch.start(SystemClock.elapsedRealtimeNanos());
+                stopwatch.lap(SystemClock.elapsedRealtimeNanos());
+                view.setStopwatch(stopwatch);
+                view.setStopwatchMode(true);
+                allocations[0] += countAllocations(view, canvas);
+            }
+        });
+
+        assertEquals("objects allocated by onDraw", 0, allocations[0]);
+    }
+
+    private int countAllocations(TimerView view, Canvas canvas)
+    {
+        for (int i = 0; i < WARMUP_FRAMES; i++)
+            view.onDraw(canvas);
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+
+        for (int i = 0; i < MEASURED_FRAMES; i++)
+            view.onDraw(canvas);
+
+        Debug.stopAllocCounting();
+        return Debug.getThreadAllocCount();
+    }
+}
@@ -0,0 +1,8 @@
+package org.isoron.base;
+
+public interface TickListener
+{
+    public long getMillisUntilNextTick();
+
+    public void onTick();
+}
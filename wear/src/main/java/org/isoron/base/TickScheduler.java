@@ -0,0 +1,87 @@
+package org.isoron.base;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+/**
+ * Wakes the UI looper exactly when the listener says the next visible change
+ * happens, and not at all when it reports that nothing will change.
+ */
+public class TickScheduler
+{
+    /**
+     * How much earlier than needed the posted tick may fire before it is
+     * moved. Every frame asks again, and the answer jitters by a millisecond
+     * or so, which is not worth a remove and post.
+     */
+    private static final long TOLERANCE_MILLIS = 4;
+
+    private final Handler handler;
+    private final TickListener listener;
+    private final Runnable tickRunnable;
+
+    private boolean started;
+    private long scheduledTime;
+
+    public TickScheduler(TickListener listener)
+    {
+        this.listener = listener;
+        handler = new Handler(Looper.getMainLooper());
+        scheduledTime = -1;
+
+        tickRunnable = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                scheduledTime = -1;
+                TickScheduler.this.listener.onTick();
+                reschedule();
+            }
+        };
+    }
+
+    public void start()
+    {
+        started = true;
+        reschedule();
+    }
+
+    public void stop()
+    {
+        started = false;
+        cancel();
+    }
+
+    public boolean isStarted()
+    {
+        return started;
+    }
+
+    public void reschedule()
+    {
+        if (!started) return;
+
+        long delay = listener.getMillisUntilNextTick();
+        if (delay < 0)
+        {
+            cancel();
+            return;
+        }
+
+        long time = SystemClock.uptimeMillis() + delay;
+        if (scheduledTime >= 0 && time >= scheduledTime
+                && time - scheduledTime <= TOLERANCE_MILLIS) return;
+
+        handler.removeCallbacks(tickRunnable);
+        handler.postAtTime(tickRunnable, time);
+        scheduledTime = time;
+    }
+
+    private void cancel()
+    {
+        handler.removeCallbacks(tickRunnable);
+        scheduledTime = -1;
+    }
+}
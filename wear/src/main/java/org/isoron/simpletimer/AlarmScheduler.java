@@ -0,0 +1,119 @@
+package org.isoron.simpletimer;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import org.isoron.simpletimer.model.TimerEngine;
+import org.isoron.simpletimer.model.TimerEngineListener;
+
+import java.util.HashMap;
+
+/**
+ * Keeps every pending deadline of the app in a TimerEngine and arms a single
+ * wakeup for the earliest one: a handler message while the process is awake,
+ * and an exact alarm to TimeoutReceiver otherwise. Must be used from the main
+ * thread.
+ */
+public class AlarmScheduler implements TimerEngineListener
+{
+    public static final String ACTION_WAKEUP = "org.isoron.simpletimer.WAKEUP";
+
+    private final TimerEngine engine;
+    private final HashMap<Long, Runnable> callbacks;
+
+    private final Handler handler;
+    private final AlarmManager alarmManager;
+    private final PendingIntent pendingIntent;
+    private final Runnable wakeupRunnable;
+
+    private boolean advancing;
+
+    public AlarmScheduler(Context context)
+    {
+        engine = new TimerEngine(System.currentTimeMillis());
+        engine.setListener(this);
+        callbacks = new HashMap<Long, Runnable>();
+
+        handler = new Handler(Looper.getMainLooper());
+        alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+
+        Intent intent = new Intent(context.getApplicationContext(), TimeoutReceiver.class);
+        intent.setAction(ACTION_WAKEUP);
+        pendingIntent = PendingIntent.getBroadcast(context.getApplicationContext(), 1, intent,
+                PendingIntent.FLAG_UPDATE_CURRENT);
+
+        wakeupRunnable = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                onWakeup();
+            }
+        };
+    }
+
+    /**
+     * Runs the callback once the wall clock reaches the given time. Returns a
+     * handle for {@link #cancel(long)}.
+     */
+    public long add(long time, Runnable callback)
+    {
+        long alarm = engine.add(time);
+        callbacks.put(alarm, callback);
+        return alarm;
+    }
+
+    public void cancel(long alarm)
+    {
+        if (engine.cancel(alarm)) callbacks.remove(alarm);
+    }
+
+    /**
+     * Runs every callback that is due. Called when either the handler message
+     * or the alarm fires; whichever comes second finds nothing to do.
+     */
+    public void onWakeup()
+    {
+        advancing = true;
+        engine.advance(System.currentTimeMillis());
+        advancing = false;
+
+        // Callbacks may move the wakeup several times; only the final one is
+        // armed. The handler may also fire a little before the wall clock
+        // deadline, in which case the wakeup did not change at all.
+        arm(engine.getNextWakeup());
+    }
+
+    @Override
+    public void onTimerExpired(long timer, long deadline, long now)
+    {
+        Runnable callback = callbacks.remove(timer);
+        if (callback != null) callback.run();
+    }
+
+    @Override
+    public void onWakeupChanged(long wakeupTime)
+    {
+        if (!advancing) arm(wakeupTime);
+    }
+
+    private void arm(long wakeupTime)
+    {
+        handler.removeCallbacks(wakeupRunnable);
+
+        if (wakeupTime < 0)
+        {
+            alarmManager.cancel(pendingIntent);
+            return;
+        }
+
+        long delay = Math.max(0, wakeupTime - System.currentTimeMillis());
+        handler.postAtTime(wakeupRunnable, SystemClock.uptimeMillis() + delay);
+        alarmManager.setExact(AlarmManager.RTC_WAKEUP, wakeupTime, pendingIntent);
+    }
+}
@@ -1,38 +1,38 @@
 package org.isoron.simpletimer;
 
-import android.app.AlarmManager;
-import android.app.PendingIntent;
-import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.os.Bundle;
-import android.provider.AlarmClock;
+import android.os.SystemClock;
 import android.support.wearable.activity.WearableActivity;
 import android.support.wearable.view.WatchViewStub;
 import android.util.Log;
 
 import org.isoron.base.AmbientModeListener;
+import org.isoron.base.AmbientRefreshScheduler;
+import org.isoron.base.TickScheduler;
 import org.isoron.simpletimer.model.SimpleTimer;
+import org.isoron.simpletimer.model.SimpleTimerAdapter;
+import org.isoron.simpletimer.model.SimpleTimerListener;
 import org.isoron.simpletimer.views.TimerView;
 
-import java.util.Timer;
-import java.util.TimerTask;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 
 public class MainActivity extends WearableActivity
 {
 
     private static final String TAG = "MainActivity";
-    public static final String PREFS_NAME = "SimpleTimerPrefs";
-    public static final int DEFAULT_INITIAL_TIME = 5 * 60 * 1000;
+    public static final String ACTION_REFRESH = "REFRESH";
 
     AmbientModeListener ambientModeListener = null;
     TimerView timerView;
 
-    private AlarmManager alarmManager;
-    private PendingIntent ambientModePendingIntent;
-    private Timer fixedRateTimer;
+    private AmbientRefreshScheduler ambientRefreshScheduler;
+    private TickScheduler tickScheduler;
+    private TimerRuntime runtime;
     private SimpleTimer stimer;
 
+
     @Override
     protected void onCreate(Bundle savedInstanceState)
     {
@@ -41,18 +41,10 @@ public class MainActivity extends WearableActivity
 
         setAmbientEnabled();
 
-        alarmManager = (AlarmManager) getSystemService(Context.ALARM_SERVICE);
-        Intent ambientModeIntent = new Intent(getApplicationContext(), MainActivity.class);
-        ambientModeIntent.setAction("REFRESH");
-        ambientModePendingIntent = PendingIntent
-                .getActivity(getApplicationContext(), 0, ambientModeIntent,
-                        PendingIntent.FLAG_UPDATE_CURRENT);
-
-        SharedPreferences preferences = getSharedPreferences(PREFS_NAME, 0);
-        final long initialTime = preferences.getLong("initialTime", DEFAULT_INITIAL_TIME);
-
-        stimer = new SimpleTimer();
-        stimer.setTotalTime(initialTime);
+        runtime = TimerRuntime.get(this);
+        runtime.attach(timerListener);
+        stimer = runtime.getTimer();
+        ambientRefreshScheduler = runtime.getAmbientRefreshScheduler();
 
         final WatchViewStub stub = (WatchViewStub) findViewById(R.id.watch_view_stub);
         stub.setOnLayoutInflatedListener(new WatchViewStub.OnLayoutInflatedListener()
@@ -62,55 +54,77 @@ public class MainActivity extends WearableActivity
             {
                 timerView = (TimerView) findViewById(R.id.timerview);
                 timerView.setTimer(stimer);
-                stimer.setListener(timerView);
+                timerView.setPowerLedger(runtime.getPowerLedger());
+                timerView.setSequence(runtime.getSequence());
+                timerView.setStopwatch(runtime.getStopwatch());
+                timerView.setStopwatchMode(isShowingStopwatch());
+                updateQuickStarts();
                 setAmbientModeListener(timerView);
-                startFixedRateTimer();
+
+                tickScheduler = new TickScheduler(timerView);
+                timerView.setTickScheduler(tickScheduler);
+                if (!isAmbient()) startTickScheduler();
+
                 refreshViews();
             }
         });
 
-        executeIntent();
+        if (getIntent() != null) onAlarmIntent(getIntent());
     }
 
-    private void executeIntent()
+    private final SimpleTimerListener timerListener = new SimpleTimerAdapter()
     {
-        Intent intent = getIntent();
+        @Override
+        public void onTimeout(long lateness)
+        {
+            if (timerView != null) timerView.onTimeout();
+        }
+
+        @Override
+        public void onStateChanged()
+        {
+            updateQuickStarts();
+            if (timerView != null) timerView.setSequence(runtime.getSequence());
+            refreshViews();
+        }
+    };
 
-        if(intent == null) return;
-        if(!intent.getAction().equals(AlarmClock.ACTION_SET_TIMER)) return;
+    private boolean isShowingStopwatch()
+    {
+        if (stimer.isRunning()) return false;
+        return runtime.getStopwatch().getElapsed(SystemClock.elapsedRealtimeNanos()) > 0;
+    }
 
-        Integer seconds = intent.getIntExtra(AlarmClock.EXTRA_LENGTH, -1);
-        if(seconds < 0) return;
+    private void updateQuickStarts()
+    {
+        if (timerView == null) return;
 
-        stimer.setTotalTime(seconds * 1000);
-        stimer.resume();
+        long durations[] = new long[TimerView.MAX_QUICK_STARTS];
+        int count = runtime.getQuickStartCache().getDurations(durations);
+        timerView.setQuickStartDurations(durations, count);
     }
 
-    private void startFixedRateTimer()
+    private void onAlarmIntent(Intent intent)
     {
-        if (fixedRateTimer != null) fixedRateTimer.cancel();
+        String action = intent.getAction();
 
-        fixedRateTimer = new Timer();
-        fixedRateTimer.scheduleAtFixedRate(new TimerTask()
+        if (ACTION_REFRESH.equals(action))
         {
-            @Override
-            public void run()
-            {
-                runOnUiThread(new Runnable()
-                {
-                    @Override
-                    public void run()
-                    {
-                        refreshViews();
-                    }
-                });
-            }
-        }, 0, 1000);
+            runtime.getPowerLedger().onAlarmWakeup();
+            ambientRefreshScheduler.onAlarm(SystemClock.elapsedRealtime());
+        }
+    }
+
+    private void startTickScheduler()
+    {
+        if (tickScheduler != null) tickScheduler.start();
+        runtime.setSecondTicksEnabled(true);
     }
 
-    private void stopFixedRateTimer()
+    private void stopTickScheduler()
     {
-        if (fixedRateTimer != null) fixedRateTimer.cancel();
+        if (tickScheduler != null) tickScheduler.stop();
+        runtime.setSecondTicksEnabled(false);
     }
 
     private void refreshViews()
@@ -126,21 +140,26 @@ public class MainActivity extends WearableActivity
     private void scheduleNextRefresh()
     {
         long delay = stimer.getMillisecondsUntilNextMinute();
-        if (delay < 0) return;
+        if (timerView != null && timerView.isStopwatchMode())
+            delay = runtime.getStopwatch().getMillisecondsUntilNextMinute(
+                    SystemClock.elapsedRealtimeNanos());
 
-        Log.d(TAG, "sleeping for " + delay + " milliseconds (" + delay / 1000 / 60.0 +
-                " minutes)");
-        alarmManager.setExact(AlarmManager.RTC_WAKEUP, System.currentTimeMillis() + delay + 100,
-                ambientModePendingIntent);
+        ambientRefreshScheduler.schedule(delay, SystemClock.elapsedRealtime(),
+                System.currentTimeMillis());
     }
 
     @Override
     public void onEnterAmbient(Bundle ambientDetails)
     {
         super.onEnterAmbient(ambientDetails);
+
+        // Nothing to watch while paused; give the screen back to the watch
+        // face rather than keeping the views around.
+        if (!stimer.isRunning() && !runtime.getStopwatch().isRunning()) finish();
+
         if (ambientModeListener != null) ambientModeListener.onEnterAmbient(ambientDetails);
 
-        stopFixedRateTimer();
+        stopTickScheduler();
 
         refreshViews();
     }
@@ -151,7 +170,9 @@ public class MainActivity extends WearableActivity
         super.onExitAmbient();
         if (ambientModeListener != null) ambientModeListener.onExitAmbient();
 
-        startFixedRateTimer();
+        ambientRefreshScheduler.cancel();
+
+        startTickScheduler();
 
         refreshViews();
     }
@@ -163,6 +184,9 @@ public class MainActivity extends WearableActivity
         super.onUpdateAmbient();
 
         if (ambientModeListener != null) ambientModeListener.onUpdateAmbient();
+
+        ambientRefreshScheduler.onSystemTick(SystemClock.elapsedRealtime());
+        refreshViews();
     }
 
     public void setAmbientModeListener(AmbientModeListener ambientModeListener)
@@ -178,6 +202,8 @@ public class MainActivity extends WearableActivity
 
         Log.d(TAG, "onNewIntent: " + intent.getAction());
 
+        onAlarmIntent(intent);
+
         refreshViews();
     }
 
@@ -187,7 +213,7 @@ public class MainActivity extends WearableActivity
         super.onPause();
         Log.d(TAG, "onPause()");
 
-        stopFixedRateTimer();
+        stopTickScheduler();
 
         refreshViews();
     }
@@ -196,30 +222,67 @@ public class MainActivity extends WearableActivity
     protected void onStop()
     {
         super.onStop();
-        stopFixedRateTimer();
-
-        savePreferences();
+        stopTickScheduler();
 
-        if (!isAmbient()) finishAffinity();
+        // The countdown lives on in the runtime; only the views go away.
+        if (!isAmbient()) finish();
 
         Log.d(TAG, "onStop()");
     }
 
-    private void savePreferences()
-    {
-        long totalTime = stimer.getTotalTime();
-        SharedPreferences settings = getSharedPreferences(PREFS_NAME, 0);
-        SharedPreferences.Editor editor = settings.edit();
-        editor.putLong("initialTime", totalTime);
-        editor.commit();
-    }
-
     @Override
     protected void onResume()
     {
         super.onResume();
         Log.d(TAG, "onResume()");
-        if (!isAmbient()) startFixedRateTimer();
+        if (!isAmbient()) startTickScheduler();
+    }
+
+    /**
+     * Reports frame metrics through "adb shell dumpsys activity
+     * org.isoron.simpletimer/.MainActivity". Passing "--overlay" toggles the
+     * on-screen overlay, "--layers" times the cached static layer against
+     * redrawing it once more and "--reset" clears the counters.
+     */
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args)
+    {
+        super.dump(prefix, fd, writer, args);
+        if (timerView == null) return;
+
+        for (String arg : args)
+        {
+            if ("--overlay".equals(arg))
+                timerView.setDebugOverlayEnabled(!timerView.isDebugOverlayEnabled());
+            if ("--layers".equals(arg)) timerView.restartLayerTrial();
+            if ("--reset".equals(arg)) timerView.getFrameMetrics().reset();
+        }
+
+        writer.print(prefix);
+        writer.println("Frame metrics:");
+        timerView.getFrameMetrics().dump(writer, prefix + "  ");
+
+        writer.print(prefix);
+        writer.println("Static layer:");
+        timerView.getLayerTrial().dump(writer, prefix + "  ", "cached", "redrawn");
+
+        writer.print(prefix);
+        writer.println("Intent latency:");
+        SetTimerActivity.getArmLatency().dump(writer, prefix + "  ", "armed");
+
+        writer.print(prefix);
+        writer.println("Power sessions:");
+        runtime.getPowerLedger().dump(writer, prefix + "  ");
+
+        runtime.getHistoryStore().dump(writer, prefix);
+    }
+
+    @Override
+    protected void onDestroy()
+    {
+        super.onDestroy();
+
+        runtime.detach(timerListener);
     }
 
     @Override
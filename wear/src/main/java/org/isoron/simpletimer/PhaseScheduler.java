@@ -0,0 +1,50 @@
+package org.isoron.simpletimer;
+
+/**
+ * Delivers the next phase boundary of a timer sequence through the shared
+ * AlarmScheduler, next to the timer deadline. Only the next boundary is ever
+ * armed.
+ */
+public class PhaseScheduler
+{
+    private final AlarmScheduler alarms;
+    private final Runnable boundaryRunnable;
+
+    private long boundary;
+    private long alarm;
+
+    public PhaseScheduler(AlarmScheduler alarms, final Runnable callback)
+    {
+        this.alarms = alarms;
+        boundary = -1;
+
+        boundaryRunnable = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                boundary = -1;
+                callback.run();
+            }
+        };
+    }
+
+    public void schedule(long newBoundary)
+    {
+        if (newBoundary == boundary) return;
+
+        cancel();
+        if (newBoundary < 0) return;
+
+        boundary = newBoundary;
+        alarm = alarms.add(boundary, boundaryRunnable);
+    }
+
+    public void cancel()
+    {
+        if (boundary < 0) return;
+
+        alarms.cancel(alarm);
+        boundary = -1;
+    }
+}
@@ -0,0 +1,107 @@
+package org.isoron.simpletimer;
+
+import android.app.Activity;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.provider.AlarmClock;
+import android.util.Log;
+
+import org.isoron.base.LatencyHistogram;
+import org.isoron.simpletimer.model.SimpleTimer;
+import org.isoron.simpletimer.model.TimerSequence;
+
+/**
+ * Entry point for timer intents, such as the ones sent by voice actions. It
+ * has no window: the timer is armed straight away, and the full UI is only
+ * started afterwards, if the intent asks for it.
+ */
+public class SetTimerActivity extends Activity
+{
+    private static final String TAG = "SetTimerActivity";
+
+    // Not available as constants at this API level.
+    public static final String ACTION_DISMISS_TIMER = "android.intent.action.DISMISS_TIMER";
+    public static final String ACTION_SHOW_TIMERS = "android.intent.action.SHOW_TIMERS";
+
+    /**
+     * Optional sequence spec, such as "work 25m, rest 5m x4", which takes the
+     * place of the length. See TimerSequence.
+     */
+    public static final String EXTRA_SEQUENCE = "org.isoron.simpletimer.extra.SEQUENCE";
+
+    private static final LatencyHistogram armLatency = new LatencyHistogram(1000000, 100);
+
+    public static LatencyHistogram getArmLatency()
+    {
+        return armLatency;
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState)
+    {
+        long start = SystemClock.elapsedRealtimeNanos();
+        super.onCreate(savedInstanceState);
+
+        Intent intent = getIntent();
+        String action = intent == null ? null : intent.getAction();
+        boolean showUi = true;
+
+        if (AlarmClock.ACTION_SET_TIMER.equals(action))
+        {
+            int seconds = intent.getIntExtra(AlarmClock.EXTRA_LENGTH, -1);
+            TimerSequence sequence = parseSequence(intent.getStringExtra(EXTRA_SEQUENCE));
+
+            // Without a length, the user has to pick one in the UI.
+            if (seconds > 0 || sequence != null)
+            {
+                arm(sequence, seconds * 1000L, start);
+                showUi = !intent.getBooleanExtra(AlarmClock.EXTRA_SKIP_UI, false);
+            }
+        }
+        else if (ACTION_DISMISS_TIMER.equals(action))
+        {
+            TimerRuntime.get(this).getTimer().reset();
+            showUi = false;
+        }
+
+        if (showUi)
+        {
+            Intent ui = new Intent(this, MainActivity.class);
+            ui.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+            startActivity(ui);
+        }
+
+        finish();
+    }
+
+    private TimerSequence parseSequence(String spec)
+    {
+        if (spec == null) return null;
+
+        try
+        {
+            return TimerSequence.parse(spec);
+        }
+        catch (IllegalArgumentException e)
+        {
+            Log.w(TAG, "invalid sequence: " + spec);
+            return null;
+        }
+    }
+
+    private void arm(TimerSequence sequence, long length, long start)
+    {
+        // The runtime persists the timer and sets its alarms as it changes.
+        TimerRuntime runtime = TimerRuntime.get(this);
+        SimpleTimer timer = runtime.getTimer();
+
+        runtime.setSequence(sequence);
+        if (sequence == null) timer.setTotalTime(length);
+        timer.resume();
+
+        long latency = SystemClock.elapsedRealtimeNanos() - start;
+        armLatency.record(latency);
+        Log.d(TAG, "timer armed " + latency / 1000 + " us after intent");
+    }
+}
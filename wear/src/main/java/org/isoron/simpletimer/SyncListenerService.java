@@ -0,0 +1,22 @@
+package org.isoron.simpletimer;
+
+import com.google.android.gms.wearable.MessageEvent;
+import com.google.android.gms.wearable.WearableListenerService;
+
+import org.isoron.simpletimer.sync.MessageApiTransport;
+
+/**
+ * Receives sync messages from the phone, starting the process if needed, so
+ * the phone can follow and control the timer while no activity is shown.
+ */
+public class SyncListenerService extends WearableListenerService
+{
+    @Override
+    public void onMessageReceived(MessageEvent event)
+    {
+        if (!MessageApiTransport.PATH.equals(event.getPath())) return;
+
+        long now = System.currentTimeMillis();
+        TimerRuntime.get(this).onSyncMessage(event.getData(), now);
+    }
+}
@@ -0,0 +1,47 @@
+package org.isoron.simpletimer;
+
+import android.content.Context;
+import android.os.PowerManager;
+import android.os.Vibrator;
+
+import org.isoron.base.PowerLedger;
+
+public class TimeoutAlert
+{
+    private static final long VIBRATION_FINISH[] =
+            {0, 250, 250, 250, 250, 250, 250, 250, 250, 250, 250};
+    private static final long VIBRATION_PHASE[] = {0, 150, 100, 150};
+    private static final long WAKE_LOCK_TIMEOUT = 5000;
+
+    private final Vibrator vibrator;
+    private final PowerManager.WakeLock wakeLock;
+    private final PowerLedger powerLedger;
+
+    public TimeoutAlert(Context context, PowerLedger powerLedger)
+    {
+        this.powerLedger = powerLedger;
+        vibrator = (Vibrator) context.getSystemService(Context.VIBRATOR_SERVICE);
+
+        PowerManager powerManager =
+                (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        wakeLock = powerManager.newWakeLock(
+                PowerManager.SCREEN_BRIGHT_WAKE_LOCK | PowerManager.ACQUIRE_CAUSES_WAKEUP,
+                "SimpleTimer:timeout");
+        wakeLock.setReferenceCounted(false);
+    }
+
+    public void alert()
+    {
+        vibrator.vibrate(VIBRATION_FINISH, -1);
+        powerLedger.onVibration(VIBRATION_FINISH);
+
+        wakeLock.acquire(WAKE_LOCK_TIMEOUT);
+        powerLedger.onWakeLock(WAKE_LOCK_TIMEOUT);
+    }
+
+    public void alertPhase()
+    {
+        vibrator.vibrate(VIBRATION_PHASE, -1);
+        powerLedger.onVibration(VIBRATION_PHASE);
+    }
+}
@@ -0,0 +1,20 @@
+package org.isoron.simpletimer;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * Receives the expiry and phase boundary alarms. Starting the runtime is
+ * all it takes to restore a countdown after the process died; no UI is
+ * involved unless the timeout actually fires.
+ */
+public class TimeoutReceiver extends BroadcastReceiver
+{
+    @Override
+    public void onReceive(Context context, Intent intent)
+    {
+        if (AlarmScheduler.ACTION_WAKEUP.equals(intent.getAction()))
+            TimerRuntime.get(context).onAlarm();
+    }
+}
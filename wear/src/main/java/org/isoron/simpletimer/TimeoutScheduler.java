@@ -0,0 +1,54 @@
+package org.isoron.simpletimer;
+
+import org.isoron.simpletimer.model.SimpleTimer;
+
+/**
+ * Delivers the timeout at the timer deadline through the shared
+ * AlarmScheduler, so it never needs a wakeup of its own.
+ */
+public class TimeoutScheduler
+{
+    private final SimpleTimer timer;
+    private final AlarmScheduler alarms;
+    private final Runnable timeoutRunnable;
+
+    private long deadline;
+    private long alarm;
+
+    public TimeoutScheduler(AlarmScheduler alarms, SimpleTimer timer)
+    {
+        this.alarms = alarms;
+        this.timer = timer;
+        deadline = -1;
+
+        timeoutRunnable = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                deadline = -1;
+                TimeoutScheduler.this.timer.checkTimeout();
+            }
+        };
+    }
+
+    public void schedule()
+    {
+        long newDeadline = timer.getDeadline();
+        if (newDeadline == deadline) return;
+
+        cancel();
+        if (newDeadline < 0) return;
+
+        deadline = newDeadline;
+        alarm = alarms.add(deadline, timeoutRunnable);
+    }
+
+    public void cancel()
+    {
+        if (deadline < 0) return;
+
+        alarms.cancel(alarm);
+        deadline = -1;
+    }
+}
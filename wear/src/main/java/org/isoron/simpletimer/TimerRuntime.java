@@ -0,0 +1,655 @@
+package org.isoron.simpletimer;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.isoron.base.AmbientRefreshScheduler;
+import org.isoron.base.PowerLedger;
+import org.isoron.base.RefreshAlarm;
+import org.isoron.simpletimer.complications.ComplicationPublisher;
+import org.isoron.simpletimer.history.HistoryRecorder;
+import org.isoron.simpletimer.history.HistoryStore;
+import org.isoron.simpletimer.history.QuickStartCache;
+import org.isoron.simpletimer.model.SimpleTimer;
+import org.isoron.simpletimer.model.SimpleTimerAdapter;
+import org.isoron.simpletimer.model.SimpleTimerListener;
+import org.isoron.simpletimer.model.Stopwatch;
+import org.isoron.simpletimer.model.TimerSequence;
+import org.isoron.simpletimer.model.TimerSnapshot;
+import org.isoron.simpletimer.model.TimerStateJournal;
+import org.isoron.simpletimer.shared.TimerStatePublisher;
+import org.isoron.simpletimer.shared.TimerStateWriter;
+import org.isoron.simpletimer.sync.MessageApiTransport;
+import org.isoron.simpletimer.sync.TimerSyncServer;
+import org.isoron.simpletimer.views.TimerView;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Process-wide home of the timer, shared by every entry point. It owns the
+ * countdown and everything that has to happen when it changes, with or
+ * without UI: persisting it, arming the expiry alarm, alerting, and keeping
+ * history. Between events it holds nothing but state; the deadline itself is
+ * kept by the alarm, which reaches TimeoutReceiver even if the process died.
+ * <p>
+ * Each concern subscribes to the timer on its own: persistence and alarms,
+ * phases, history, quick starts, power metrics, alerts, complications, the
+ * shared state region read by other apps, and sync with the phone. The
+ * activity attaches as one more listener while it exists and detaches when it
+ * goes away, so leaving the app drops the views but keeps the countdown.
+ */
+public class TimerRuntime
+{
+    private static final String TAG = "TimerRuntime";
+
+    public static final String JOURNAL_FILENAME = "timer.journal";
+    public static final String HISTORY_DIRECTORY = "history";
+    public static final String QUICK_START_FILENAME = "quickstart.cache";
+    public static final String SHARED_STATE_FILENAME = "timer.state";
+    public static final String PREFERENCES_NAME = "timer";
+    public static final String KEY_SEQUENCE = "sequence";
+    public static final int DEFAULT_INITIAL_TIME = 5 * 60 * 1000;
+    public static final long MAX_ALERT_LATENESS = 60 * 1000;
+    public static final int POWER_LEDGER_SESSIONS = 32;
+    public static final int MAX_AMBIENT_WAKEUPS_PER_HOUR = 20;
+
+    private static TimerRuntime instance;
+
+    private final Context context;
+    private final SimpleTimer timer;
+    private final Stopwatch stopwatch;
+    private final TimerStateJournal journal;
+    private final AlarmScheduler alarmScheduler;
+    private final TimeoutScheduler timeoutScheduler;
+    private final TimeoutAlert timeoutAlert;
+    private final PowerLedger powerLedger;
+    private final AmbientRefreshScheduler ambientRefreshScheduler;
+    private final ComplicationPublisher complicationPublisher;
+    private final TimerStatePublisher statePublisher;
+
+    private final SharedPreferences preferences;
+    private final PhaseScheduler phaseScheduler;
+    private TimerSequence sequence;
+    private boolean sequenceSet;
+    private int phase;
+
+    private final HistoryStore historyStore;
+    private final HistoryRecorder historyRecorder;
+    private final QuickStartCache quickStartCache;
+    private boolean wasReset;
+
+    private final MessageApiTransport syncTransport;
+    private final TimerSyncServer syncServer;
+
+    private final Handler handler;
+    private boolean secondTicksEnabled;
+
+    private SimpleTimerListener ui;
+
+    private TimerRuntime(Context context)
+    {
+        this.context = context;
+        handler = new Handler(Looper.getMainLooper());
+
+        timer = new SimpleTimer();
+        timer.setTotalTime(DEFAULT_INITIAL_TIME);
+        stopwatch = new Stopwatch();
+
+        journal = openJournal(context);
+        if (journal != null) journal.restore(timer);
+
+        historyStore = HistoryStore.open(new File(context.getFilesDir(), HISTORY_DIRECTORY),
+                AsyncTask.SERIAL_EXECUTOR);
+        historyRecorder = new HistoryRecorder(historyStore, timer.getSnapshot());
+
+        quickStartCache = QuickStartCache.open(new File(context.getFilesDir(),
+                QUICK_START_FILENAME), AsyncTask.SERIAL_EXECUTOR, TimerView.MAX_QUICK_STARTS,
+                new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        handler.post(notifyUi);
+                    }
+                });
+
+        powerLedger = new PowerLedger(POWER_LEDGER_SESSIONS);
+        timeoutAlert = new TimeoutAlert(context, powerLedger);
+        alarmScheduler = new AlarmScheduler(context);
+        ambientRefreshScheduler = new AmbientRefreshScheduler(createRefreshAlarm(context),
+                MAX_AMBIENT_WAKEUPS_PER_HOUR);
+        timeoutScheduler = new TimeoutScheduler(alarmScheduler, timer);
+        complicationPublisher = new ComplicationPublisher(context);
+        statePublisher = openStatePublisher(context);
+
+        preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        phaseScheduler = new PhaseScheduler(alarmScheduler, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                onPhaseBoundary();
+            }
+        });
+
+        loadSequence();
+
+        // Incoming messages arrive through SyncListenerService, which also
+        // starts the process, so the transport here only sends.
+        syncTransport = new MessageApiTransport(context, false);
+        syncServer = new TimerSyncServer(timer, syncTransport);
+
+        wasReset = isReset();
+        timer.addListener(persistence);
+        timer.addListener(phases);
+        timer.addListener(complicationPublisher);
+        if (statePublisher != null) timer.addListener(statePublisher);
+        timer.addListener(history);
+        timer.addListener(quickStarts);
+        timer.addListener(powerMetrics);
+        timer.addListener(alerts);
+        timer.addListener(sync);
+        updatePowerSession();
+
+        // The process may have died while the timer ran.
+        timer.checkTimeout();
+        timeoutScheduler.schedule();
+        updatePhase();
+
+        if (statePublisher != null) statePublisher.publish(timer.getSnapshot());
+
+        // Whatever the phone knew may be stale, so it gets the full state.
+        syncTransport.setReadyCallback(flushSync);
+        syncTransport.connect();
+    }
+
+    /**
+     * Returns the runtime, creating it on the main thread if needed. Creating
+     * it may deliver a timeout, with its alert and activity launch, so a
+     * caller on another thread, such as a provider binder thread, waits for
+     * the main thread to do it.
+     */
+    public static TimerRuntime get(Context context)
+    {
+        synchronized (TimerRuntime.class)
+        {
+            if (instance != null) return instance;
+        }
+
+        final Context appContext = context.getApplicationContext();
+        if (Looper.myLooper() == Looper.getMainLooper()) return create(appContext);
+
+        FutureTask<TimerRuntime> task = new FutureTask<TimerRuntime>(new Callable<TimerRuntime>()
+        {
+            @Override
+            public TimerRuntime call()
+            {
+                return create(appContext);
+            }
+        });
+
+        new Handler(Looper.getMainLooper()).post(task);
+
+        try
+        {
+            return task.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while creating timer runtime", e);
+        }
+        catch (ExecutionException e)
+        {
+            throw new IllegalStateException("could not create timer runtime", e.getCause());
+        }
+    }
+
+    private static synchronized TimerRuntime create(Context context)
+    {
+        if (instance == null) instance = new TimerRuntime(context);
+        return instance;
+    }
+
+    /**
+     * Forgets the runtime, so that tests can exercise a cold start.
+     */
+    static synchronized void releaseForTesting()
+    {
+        instance = null;
+    }
+
+    private static TimerStateJournal openJournal(Context context)
+    {
+        try
+        {
+            File file = new File(context.getFilesDir(), JOURNAL_FILENAME);
+            return TimerStateJournal.open(file, AsyncTask.SERIAL_EXECUTOR);
+        }
+        catch (IOException e)
+        {
+            Log.w(TAG, "could not open timer journal", e);
+            return null;
+        }
+    }
+
+    private static TimerStatePublisher openStatePublisher(Context context)
+    {
+        try
+        {
+            File file = new File(context.getFilesDir(), SHARED_STATE_FILENAME);
+            return new TimerStatePublisher(context, TimerStateWriter.open(file));
+        }
+        catch (IOException e)
+        {
+            Log.w(TAG, "could not open shared timer state", e);
+            return null;
+        }
+    }
+
+    private static RefreshAlarm createRefreshAlarm(Context context)
+    {
+        final AlarmManager alarmManager =
+                (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+
+        Intent intent = new Intent(context.getApplicationContext(), MainActivity.class);
+        intent.setAction(MainActivity.ACTION_REFRESH);
+        final PendingIntent pendingIntent = PendingIntent.getActivity(
+                context.getApplicationContext(), 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+
+        return new RefreshAlarm()
+        {
+            @Override
+            public void set(long elapsedTime)
+            {
+                Log.d(TAG, "ambient refresh in " +
+                        (elapsedTime - SystemClock.elapsedRealtime()) + " ms");
+                alarmManager.setExact(AlarmManager.ELAPSED_REALTIME_WAKEUP, elapsedTime,
+                        pendingIntent);
+            }
+
+            @Override
+            public void cancel()
+            {
+                alarmManager.cancel(pendingIntent);
+            }
+        };
+    }
+
+    public void attach(SimpleTimerListener ui)
+    {
+        if (this.ui != null) timer.removeListener(this.ui);
+
+        this.ui = ui;
+        timer.addListener(ui);
+    }
+
+    public void detach(SimpleTimerListener ui)
+    {
+        if (this.ui != ui) return;
+
+        timer.removeListener(ui);
+        this.ui = null;
+        setSecondTicksEnabled(false);
+    }
+
+    /**
+     * Second ticks are only worth a wakeup while someone is looking, so the
+     * activity turns them on while it is interactive. One callback is posted
+     * per second, computed from the deadline, and only while some listener
+     * was added with {@link #addTickListener(SimpleTimerListener)}.
+     */
+    public void setSecondTicksEnabled(boolean enabled)
+    {
+        secondTicksEnabled = enabled;
+        scheduleSecondTick();
+    }
+
+    public void addTickListener(SimpleTimerListener listener)
+    {
+        timer.addTickListener(listener);
+        scheduleSecondTick();
+    }
+
+    public void removeTickListener(SimpleTimerListener listener)
+    {
+        timer.removeTickListener(listener);
+        scheduleSecondTick();
+    }
+
+    private void scheduleSecondTick()
+    {
+        handler.removeCallbacks(secondTick);
+        if (!secondTicksEnabled || !timer.hasTickListeners()) return;
+
+        long delay = timer.getMillisecondsUntilNextSecond();
+        if (delay >= 0) handler.postDelayed(secondTick, delay);
+    }
+
+    private final Runnable secondTick = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            timer.dispatchSecondTick();
+            scheduleSecondTick();
+        }
+    };
+
+    public SimpleTimer getTimer()
+    {
+        return timer;
+    }
+
+    /**
+     * Stopwatch shown next to the countdown. It runs on elapsedRealtimeNanos,
+     * which keeps counting in deep sleep, and lives only as long as the
+     * process.
+     */
+    public Stopwatch getStopwatch()
+    {
+        return stopwatch;
+    }
+
+    public File getSharedStateFile()
+    {
+        return new File(context.getFilesDir(), SHARED_STATE_FILENAME);
+    }
+
+    public PowerLedger getPowerLedger()
+    {
+        return powerLedger;
+    }
+
+    /**
+     * Kept here rather than in the activity, so the hourly wakeup budget
+     * survives the activity being recreated.
+     */
+    public AmbientRefreshScheduler getAmbientRefreshScheduler()
+    {
+        return ambientRefreshScheduler;
+    }
+
+    public HistoryStore getHistoryStore()
+    {
+        return historyStore;
+    }
+
+    public QuickStartCache getQuickStartCache()
+    {
+        return quickStartCache;
+    }
+
+    public TimerSequence getSequence()
+    {
+        return sequence;
+    }
+
+    /**
+     * Makes the timer run the given sequence from its start, or go back to a
+     * plain countdown if null. Setting any other duration on the timer also
+     * drops the sequence.
+     */
+    public void setSequence(TimerSequence newSequence)
+    {
+        sequence = newSequence;
+        sequenceSet = true;
+        phase = 0;
+
+        String spec = sequence == null ? null : sequence.getSpec();
+        preferences.edit().putString(KEY_SEQUENCE, spec).apply();
+
+        if (sequence != null) timer.setTotalTime(sequence.getTotalTime());
+        timer.reset();
+    }
+
+    /**
+     * The first read from SharedPreferences waits for its file, so the saved
+     * sequence is read on the executor and applied on the main thread, unless
+     * a new one was set in the meantime.
+     */
+    private void loadSequence()
+    {
+        AsyncTask.SERIAL_EXECUTOR.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                String spec = preferences.getString(KEY_SEQUENCE, null);
+                if (spec == null) return;
+
+                try
+                {
+                    final TimerSequence loaded = TimerSequence.parse(spec);
+                    handler.post(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            onSequenceLoaded(loaded);
+                        }
+                    });
+                }
+                catch (IllegalArgumentException e)
+                {
+                    Log.w(TAG, "ignoring saved sequence " + spec, e);
+                }
+            }
+        });
+    }
+
+    private void onSequenceLoaded(TimerSequence loaded)
+    {
+        if (sequenceSet || loaded.getTotalTime() != timer.getTotalTime()) return;
+
+        sequence = loaded;
+        updatePhase();
+        if (ui != null) ui.onStateChanged();
+    }
+
+    private final Runnable notifyUi = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            if (ui != null) ui.onStateChanged();
+        }
+    };
+
+    private void onPhaseBoundary()
+    {
+        int previous = phase;
+        updatePhase();
+
+        if (phase == previous) return;
+
+        timeoutAlert.alertPhase();
+        if (ui != null) ui.onStateChanged();
+    }
+
+    /**
+     * Finds the current phase and arms the alarm for its end. The end of the
+     * last phase is the timer deadline, which TimeoutScheduler already covers.
+     */
+    private void updatePhase()
+    {
+        if (sequence != null && sequence.getTotalTime() != timer.getTotalTime())
+        {
+            sequence = null;
+            preferences.edit().remove(KEY_SEQUENCE).apply();
+        }
+
+        if (sequence == null)
+        {
+            phaseScheduler.cancel();
+            return;
+        }
+
+        TimerSnapshot snapshot = timer.getSnapshot();
+        phase = sequence.findPhase(snapshot, System.currentTimeMillis(), phase);
+
+        if (phase == sequence.getPhaseCount() - 1) phaseScheduler.cancel();
+        else phaseScheduler.schedule(sequence.getPhaseDeadline(snapshot, phase));
+    }
+
+    /**
+     * Persists the timer and re-arms its expiry alarm. Both are cheap and
+     * idempotent, so this is safe to call after any change.
+     */
+    public void commit()
+    {
+        if (journal != null) journal.save(timer);
+        timeoutScheduler.schedule();
+    }
+
+    public void onAlarm()
+    {
+        powerLedger.onAlarmWakeup();
+        alarmScheduler.onWakeup();
+    }
+
+    /**
+     * Hands a message from the phone to the sync server. May be called from
+     * any thread; the message is handled on the main thread.
+     */
+    public void onSyncMessage(final byte data[], final long receivedTime)
+    {
+        handler.post(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                syncServer.onMessage(data, receivedTime);
+            }
+        });
+    }
+
+    private final Runnable flushSync = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            syncServer.flush(System.currentTimeMillis());
+        }
+    };
+
+    private final SimpleTimerListener sync = new SimpleTimerAdapter()
+    {
+        @Override
+        public void onStateChanged()
+        {
+            if (syncServer.onStateChanged())
+                handler.postDelayed(flushSync, TimerSyncServer.BATCH_DELAY);
+        }
+    };
+
+    private final SimpleTimerListener persistence = new SimpleTimerAdapter()
+    {
+        @Override
+        public void onStateChanged()
+        {
+            commit();
+            scheduleSecondTick();
+        }
+    };
+
+    private final SimpleTimerListener phases = new SimpleTimerAdapter()
+    {
+        @Override
+        public void onStateChanged()
+        {
+            updatePhase();
+        }
+    };
+
+    private final SimpleTimerListener history = new SimpleTimerAdapter()
+    {
+        @Override
+        public void onTimeout(long lateness)
+        {
+            long now = System.currentTimeMillis();
+            historyRecorder.onTimeout(timer.getSnapshot(), now - lateness);
+        }
+
+        @Override
+        public void onStateChanged()
+        {
+            historyRecorder.onStateChanged(timer.getSnapshot(), System.currentTimeMillis());
+        }
+    };
+
+    private final SimpleTimerListener quickStarts = new SimpleTimerAdapter()
+    {
+        @Override
+        public void onStarted(TimerSnapshot snapshot)
+        {
+            // Whatever started the run, swiping, a quick start or an intent,
+            // the duration it started with counts towards the quick starts.
+            if (wasReset) quickStartCache.record(snapshot.getTotalTime());
+        }
+
+        @Override
+        public void onStateChanged()
+        {
+            wasReset = isReset();
+        }
+    };
+
+    private final SimpleTimerListener powerMetrics = new SimpleTimerAdapter()
+    {
+        @Override
+        public void onStateChanged()
+        {
+            updatePowerSession();
+        }
+    };
+
+    private final SimpleTimerListener alerts = new SimpleTimerAdapter()
+    {
+        @Override
+        public void onTimeout(long lateness)
+        {
+            Log.d(TAG, "timeout delivered " + lateness + " ms after deadline");
+
+            // A timer that ran out long ago (for example, across a reboot) is
+            // just reset quietly.
+            if (lateness > MAX_ALERT_LATENESS) return;
+
+            timeoutAlert.alert();
+
+            if (ui == null)
+            {
+                Intent intent = new Intent(context, MainActivity.class);
+                intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+                context.startActivity(intent);
+            }
+        }
+    };
+
+    private boolean isReset()
+    {
+        return timer.isPaused() && timer.getRemainingTime() == timer.getTotalTime();
+    }
+
+    private void updatePowerSession()
+    {
+        if (timer.isRunning() && !powerLedger.isSessionActive())
+            powerLedger.startSession(SystemClock.elapsedRealtime(),
+                    SystemClock.currentThreadTimeMillis());
+        else if (isReset() && powerLedger.isSessionActive())
+            powerLedger.endSession(SystemClock.elapsedRealtime(),
+                    SystemClock.currentThreadTimeMillis());
+    }
+}
@@ -0,0 +1,87 @@
+package org.isoron.simpletimer.complications;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.wearable.complications.ProviderUpdateRequester;
+
+import org.isoron.simpletimer.model.SimpleTimerAdapter;
+import org.isoron.simpletimer.model.TimerSnapshot;
+
+/**
+ * Asks the system to refresh the countdown complication, but only when what
+ * it shows would change: the timer starting, stopping, or moving its deadline
+ * or paused remaining time. Bursts of changes, such as a swipe through
+ * durations, are coalesced into a single request.
+ */
+public class ComplicationPublisher extends SimpleTimerAdapter
+{
+    private static final long PUBLISH_DELAY = 250;
+
+    private final ProviderUpdateRequester requester;
+    private final Handler handler;
+    private final Runnable publish;
+
+    private boolean running;
+    private long value;
+    private boolean pending;
+
+    public ComplicationPublisher(Context context)
+    {
+        requester = new ProviderUpdateRequester(context,
+                new ComponentName(context, CountdownProviderService.class));
+        handler = new Handler(Looper.getMainLooper());
+        value = -1;
+
+        publish = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                pending = false;
+                requester.requestUpdateAll();
+            }
+        };
+    }
+
+    @Override
+    public void onStarted(TimerSnapshot snapshot)
+    {
+        update(snapshot);
+    }
+
+    @Override
+    public void onPaused(TimerSnapshot snapshot)
+    {
+        update(snapshot);
+    }
+
+    @Override
+    public void onReset(TimerSnapshot snapshot)
+    {
+        update(snapshot);
+    }
+
+    @Override
+    public void onDurationChanged(TimerSnapshot snapshot)
+    {
+        update(snapshot);
+    }
+
+    private void update(TimerSnapshot snapshot)
+    {
+        long newValue;
+        if (snapshot.isRunning()) newValue = snapshot.getDeadline();
+        else newValue = snapshot.getRemainingTime(0);
+
+        if (snapshot.isRunning() == running && newValue == value) return;
+
+        running = snapshot.isRunning();
+        value = newValue;
+
+        if (pending) return;
+        pending = true;
+        handler.postDelayed(publish, PUBLISH_DELAY);
+    }
+}
@@ -0,0 +1,60 @@
+package org.isoron.simpletimer.complications;
+
+import android.app.PendingIntent;
+import android.content.Intent;
+import android.support.wearable.complications.ComplicationData;
+import android.support.wearable.complications.ComplicationManager;
+import android.support.wearable.complications.ComplicationProviderService;
+import android.support.wearable.complications.ComplicationText;
+
+import org.isoron.simpletimer.MainActivity;
+import org.isoron.simpletimer.TimerRuntime;
+import org.isoron.simpletimer.model.TimerSnapshot;
+
+/**
+ * Complication data source for the timer. While running, it publishes the
+ * deadline as a time difference, which the watch face counts down on its own;
+ * while paused, it publishes the fixed remaining time. Either way the data
+ * stays valid until the timer changes, so the provider declares no update
+ * period and is only asked again through ComplicationPublisher.
+ */
+public class CountdownProviderService extends ComplicationProviderService
+{
+    @Override
+    public void onComplicationUpdate(int complicationId, int type, ComplicationManager manager)
+    {
+        if (type != ComplicationData.TYPE_SHORT_TEXT && type != ComplicationData.TYPE_LONG_TEXT)
+        {
+            manager.noUpdateRequired(complicationId);
+            return;
+        }
+
+        TimerSnapshot snapshot = TimerRuntime.get(this).getTimer().getSnapshot();
+        ComplicationText text;
+
+        if (snapshot.isRunning())
+        {
+            text = new ComplicationText.TimeDifferenceBuilder()
+                    .setReferencePeriodStart(snapshot.getDeadline())
+                    .setReferencePeriodEnd(snapshot.getDeadline())
+                    .setStyle(ComplicationText.DIFFERENCE_STYLE_STOPWATCH)
+                    .build();
+        }
+        else
+        {
+            long seconds = (snapshot.getRemainingTime(0) + 999) / 1000;
+            text = ComplicationText.plainText(
+                    String.format("%d:%02d", seconds / 60, seconds % 60));
+        }
+
+        Intent intent = new Intent(this, MainActivity.class);
+        PendingIntent tapAction = PendingIntent.getActivity(this, 0, intent,
+                PendingIntent.FLAG_UPDATE_CURRENT);
+
+        ComplicationData.Builder builder = new ComplicationData.Builder(type);
+        if (type == ComplicationData.TYPE_SHORT_TEXT) builder.setShortText(text);
+        else builder.setLongText(text);
+
+        manager.updateComplicationData(complicationId, builder.setTapAction(tapAction).build());
+    }
+}
@@ -1,6 +0,0 @@
-package org.isoron.simpletimer.model;
-
-public interface SimpleTimerListener
-{
-    public void onTimeout();
-}
@@ -0,0 +1,101 @@
+package org.isoron.simpletimer.shared;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+import org.isoron.simpletimer.TimerRuntime;
+import org.isoron.simpletimer.model.TimerSnapshot;
+
+import java.io.FileNotFoundException;
+
+/**
+ * Lets watch faces, tiles and automation apps read the timer without
+ * launching the app. openFile hands out a read-only descriptor of the shared
+ * state region; a client maps it once with {@link TimerStateReader} and then
+ * polls with plain memory reads. query returns the same fields as a one-row
+ * cursor for clients that only look occasionally. Observers of
+ * {@link #CONTENT_URI} are notified on start, stop and reset.
+ */
+public class TimerStateProvider extends ContentProvider
+{
+    public static final String AUTHORITY = "org.isoron.simpletimer.state";
+    public static final Uri CONTENT_URI = Uri.parse("content://" + AUTHORITY + "/timer");
+
+    public static final String COLUMN_STATE = "state";
+    public static final String COLUMN_DEADLINE = "deadline";
+    public static final String COLUMN_TOTAL = "total";
+    public static final String COLUMN_REMAINING = "remaining";
+
+    private static final String[] COLUMNS =
+            {COLUMN_STATE, COLUMN_DEADLINE, COLUMN_TOTAL, COLUMN_REMAINING};
+
+    /**
+     * Runs on the main thread when the process starts, so the runtime is
+     * never built on the binder threads that serve query and openFile.
+     */
+    @Override
+    public boolean onCreate()
+    {
+        TimerRuntime.get(getContext());
+        return true;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                        String sortOrder)
+    {
+        TimerSnapshot snapshot = TimerRuntime.get(getContext()).getTimer().getSnapshot();
+
+        int state = SharedTimerState.STATE_PAUSED;
+        long deadline = 0;
+        if (snapshot.isRunning())
+        {
+            state = SharedTimerState.STATE_RUNNING;
+            deadline = snapshot.getDeadline();
+        }
+
+        MatrixCursor cursor = new MatrixCursor(COLUMNS);
+        cursor.addRow(new Object[]{state, deadline, snapshot.getTotalTime(),
+                snapshot.getRemainingTime(System.currentTimeMillis())});
+        return cursor;
+    }
+
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException
+    {
+        if (!"r".equals(mode)) throw new FileNotFoundException("read-only: " + uri);
+
+        // Creating the runtime publishes the current state before anyone maps it.
+        TimerRuntime runtime = TimerRuntime.get(getContext());
+        return ParcelFileDescriptor.open(runtime.getSharedStateFile(),
+                ParcelFileDescriptor.MODE_READ_ONLY);
+    }
+
+    @Override
+    public String getType(Uri uri)
+    {
+        return "vnd.android.cursor.item/vnd." + AUTHORITY;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs)
+    {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,85 @@
+package org.isoron.simpletimer.shared;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import org.isoron.simpletimer.model.SimpleTimerAdapter;
+import org.isoron.simpletimer.model.TimerSnapshot;
+
+/**
+ * Keeps the shared state region current and tells observers of
+ * {@link TimerStateProvider#CONTENT_URI} when the timer starts, stops or is
+ * reset. Duration changes are written right away, but a swipe through
+ * durations only produces one notification once it settles.
+ */
+public class TimerStatePublisher extends SimpleTimerAdapter
+{
+    private static final long DURATION_NOTIFY_DELAY = 250;
+
+    private final Context context;
+    private final TimerStateWriter writer;
+    private final Handler handler;
+    private final Runnable notifyChange;
+
+    public TimerStatePublisher(Context context, TimerStateWriter writer)
+    {
+        this.context = context;
+        this.writer = writer;
+        handler = new Handler(Looper.getMainLooper());
+
+        notifyChange = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                notifyChange();
+            }
+        };
+    }
+
+    public void publish(TimerSnapshot snapshot)
+    {
+        writer.write(snapshot);
+    }
+
+    @Override
+    public void onStarted(TimerSnapshot snapshot)
+    {
+        onTransition(snapshot);
+    }
+
+    @Override
+    public void onPaused(TimerSnapshot snapshot)
+    {
+        onTransition(snapshot);
+    }
+
+    @Override
+    public void onReset(TimerSnapshot snapshot)
+    {
+        onTransition(snapshot);
+    }
+
+    @Override
+    public void onDurationChanged(TimerSnapshot snapshot)
+    {
+        writer.write(snapshot);
+
+        handler.removeCallbacks(notifyChange);
+        handler.postDelayed(notifyChange, DURATION_NOTIFY_DELAY);
+    }
+
+    private void onTransition(TimerSnapshot snapshot)
+    {
+        writer.write(snapshot);
+
+        handler.removeCallbacks(notifyChange);
+        notifyChange();
+    }
+
+    private void notifyChange()
+    {
+        context.getContentResolver().notifyChange(TimerStateProvider.CONTENT_URI, null);
+    }
+}
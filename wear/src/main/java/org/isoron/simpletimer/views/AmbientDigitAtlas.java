@@ -0,0 +1,138 @@
+package org.isoron.simpletimer.views;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+/**
+ * Digits and the colon rasterized once into an alpha-only bitmap, so that an
+ * ambient frame is a handful of bitmap blits instead of text layout. Glyphs
+ * are kept at two sizes, one per row: the large one for the minutes and the
+ * small one for the clock. In low-bit mode the glyphs are rasterized without
+ * anti-aliasing, so every pixel is either fully lit or off.
+ */
+public class AmbientDigitAtlas
+{
+    public static final int LARGE = 0;
+    public static final int SMALL = 1;
+
+    private static final String GLYPHS = "0123456789:";
+    private static final int ROWS = 2;
+
+    private final Rect sources[][];
+    private final int advances[][];
+    private final int ascents[];
+    private final Rect dst;
+    private final Paint paint;
+
+    private Bitmap atlas;
+
+    public AmbientDigitAtlas()
+    {
+        sources = new Rect[ROWS][GLYPHS.length()];
+        advances = new int[ROWS][GLYPHS.length()];
+        ascents = new int[ROWS];
+        dst = new Rect();
+
+        for (int row = 0; row < ROWS; row++)
+            for (int i = 0; i < GLYPHS.length(); i++)
+                sources[row][i] = new Rect();
+
+        paint = new Paint();
+        paint.setColor(Color.WHITE);
+    }
+
+    public void build(float largeSize, float smallSize, boolean lowBit)
+    {
+        release();
+
+        Paint glyphPaint = new Paint();
+        glyphPaint.setColor(Color.WHITE);
+        glyphPaint.setStyle(Paint.Style.FILL);
+        glyphPaint.setAntiAlias(!lowBit);
+        glyphPaint.setTextAlign(Paint.Align.LEFT);
+
+        float sizes[] = new float[]{largeSize, smallSize};
+        int rowTops[] = new int[ROWS + 1];
+        int width = 1;
+
+        for (int row = 0; row < ROWS; row++)
+        {
+            glyphPaint.setTextSize(sizes[row]);
+            ascents[row] = (int) Math.ceil(-glyphPaint.ascent());
+            int rowHeight = ascents[row] + (int) Math.ceil(glyphPaint.descent());
+            rowTops[row + 1] = rowTops[row] + rowHeight;
+
+            int x = 0;
+            for (int i = 0; i < GLYPHS.length(); i++)
+            {
+                int advance = (int) Math.ceil(glyphPaint.measureText(GLYPHS, i, i + 1));
+                sources[row][i].set(x, rowTops[row], x + advance, rowTops[row + 1]);
+                advances[row][i] = advance;
+                x += advance;
+            }
+
+            width = Math.max(width, x);
+        }
+
+        atlas = Bitmap.createBitmap(width, Math.max(1, rowTops[ROWS]), Bitmap.Config.ALPHA_8);
+        Canvas canvas = new Canvas(atlas);
+
+        for (int row = 0; row < ROWS; row++)
+        {
+            glyphPaint.setTextSize(sizes[row]);
+            for (int i = 0; i < GLYPHS.length(); i++)
+            {
+                Rect source = sources[row][i];
+                canvas.drawText(GLYPHS, i, i + 1, source.left, source.top + ascents[row],
+                        glyphPaint);
+            }
+        }
+    }
+
+    public boolean isBuilt()
+    {
+        return atlas != null;
+    }
+
+    public void release()
+    {
+        if (atlas == null) return;
+
+        atlas.recycle();
+        atlas = null;
+    }
+
+    /**
+     * Draws the characters centered on x, with their baseline at y. Only
+     * digits and the colon are supported.
+     */
+    public void draw(Canvas canvas, int row, char text[], int start, int count, float x,
+                     float y)
+    {
+        int width = 0;
+        for (int i = start; i < start + count; i++)
+            width += advances[row][indexOf(text[i])];
+
+        int left = Math.round(x - width / 2f);
+        int top = Math.round(y) - ascents[row];
+
+        for (int i = start; i < start + count; i++)
+        {
+            int glyph = indexOf(text[i]);
+            Rect source = sources[row][glyph];
+
+            dst.set(left, top, left + source.width(), top + source.height());
+            canvas.drawBitmap(atlas, source, dst, paint);
+            left += advances[row][glyph];
+        }
+    }
+
+    private static int indexOf(char c)
+    {
+        if (c == ':') return GLYPHS.length() - 1;
+        return c - '0';
+    }
+}
@@ -2,29 +2,40 @@ package org.isoron.simpletimer.views;
 
 import android.app.Activity;
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Rect;
 import android.graphics.RectF;
 import android.os.Bundle;
-import android.os.PowerManager;
+import android.os.SystemClock;
 import android.os.Vibrator;
 import android.support.wearable.activity.WearableActivity;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.MotionEvent;
+import android.view.VelocityTracker;
 import android.view.View;
 
 import org.isoron.base.AmbientModeListener;
 import org.isoron.base.ColorHelper;
+import org.isoron.base.DigitStrings;
+import org.isoron.base.DrawPathTrial;
+import org.isoron.base.FrameMetrics;
+import org.isoron.base.LatencyHistogram;
+import org.isoron.base.PowerLedger;
+import org.isoron.base.TickListener;
+import org.isoron.base.TickScheduler;
 import org.isoron.simpletimer.model.SimpleTimer;
-import org.isoron.simpletimer.model.SimpleTimerListener;
+import org.isoron.simpletimer.model.Stopwatch;
+import org.isoron.simpletimer.model.TimerSequence;
 
-import java.util.Calendar;
+import java.util.TimeZone;
 
 
-public class TimerView extends View implements AmbientModeListener, SimpleTimerListener
+public class TimerView extends View implements AmbientModeListener, TickListener
 {
     private static final String TAG = "TimerView";
 
@@ -32,11 +43,25 @@ public class TimerView extends View implements AmbientModeListener, SimpleTimerL
     private int secondaryColor;
     private int tertiaryColor;
     private int backgroundColor;
+    private int ringColors[];
 
-    private Paint paint;
-    private Paint paintInteractive;
-    private Paint paintAmbient;
-    private Paint pClockInteractive;
+    private Paint paintBackground;
+
+    private Paint paintMinutes;
+    private Paint paintSeconds;
+    private Paint paintLabel;
+    private Paint paintClock;
+
+    private Paint paintLabelAmbient;
+
+    private Paint paintRing;
+    private Paint paintRingTrack;
+    private final RectF ringRect;
+
+    private float minutesWidths[];
+    private float secondsWidths[];
+    private final char digitBuffer[];
+    private final char clockBuffer[];
 
     private int width;
     private int height;
@@ -45,37 +70,118 @@ public class TimerView extends View implements AmbientModeListener, SimpleTimerL
     private final WearableActivity activity;
     private Vibrator vibrator;
 
-    private int step;
+    private long blinkOrigin;
 
     private boolean hasLongPressed;
     private boolean hasMoved = false;
     private boolean ambientMode = false;
+    private boolean lowBitAmbient = false;
+    private boolean burnInProtection = false;
+
+    public static final int MAX_QUICK_STARTS = 3;
+
+    private static final int NO_LABEL = Integer.MIN_VALUE;
+    private static final int LABEL_MINUTES = -1;
+    private static final int LABEL_MINUTE = -2;
+    private static final int LABEL_STOPWATCH = -3;
+
+    private static final int BURN_IN_POSITIONS = 9;
+    private static final int RING_COLOR_STEPS = 64;
+    private static final int LAYER_TRIAL_FRAMES = 120;
 
     private final int GRANULARITY = 60 * 1000;
-    private final long VIBRATION_FINISH[] = {0, 250, 250, 250, 250, 250, 250, 250, 250, 250, 250};
+    private final int BLINK_PERIOD = 1000;
 
     private RectF screenRect;
+    private float centerX;
+    private float timerY;
+    private float labelY;
+    private float clockY;
+    private float secondsGap;
+
+    private TimeZone timeZone;
+
+    private final DrawPathTrial layerTrial;
+    private Bitmap staticLayer;
+    private Canvas layerCanvas;
+    private int layerLabel;
+
+    private final AmbientDigitAtlas ambientAtlas;
+    private int burnInStep;
+    private int burnInShift;
+
+    private final long quickStartDurations[];
+    private final char quickStartLabels[][];
+    private final int quickStartLengths[];
+    private final RectF quickStartRects[];
+    private int quickStartCount;
+    private float quickStartY;
+    private Paint paintQuickStart;
+
+    private TimerSequence sequence;
+    private int phase;
+    private int labelPhase;
+    private final char phaseLabel[];
+    private int phaseLabelLength;
+
+    private Stopwatch stopwatch;
+    private boolean stopwatchMode;
+    private final char lapText[];
+    private final char splitText[];
+
+    private final FrameMetrics frameMetrics;
+    private boolean debugOverlay;
+    private Paint paintDebug;
+    private final StringBuilder debugText;
 
     private SimpleTimer stimer;
+    private TickScheduler tickScheduler;
+    private PowerLedger powerLedger;
+    private TouchListener touchListener;
 
     public TimerView(Context ctx, AttributeSet attrs)
     {
         super(ctx, attrs);
         this.activity = (WearableActivity) ctx;
 
-        step = 0;
+        restartBlink();
 
         hasMoved = false;
         hasLongPressed = false;
         stimer = null;
 
-        initializePaints();
+        minutesWidths = new float[DigitStrings.COUNT];
+        secondsWidths = new float[DigitStrings.COUNT];
+        digitBuffer = new char[20];
+        clockBuffer = new char[]{'0', '0', ':', '0', '0'};
+        phaseLabel = new char[64];
+        lapText = new char[48];
+        splitText = new char[48];
+
+        quickStartDurations = new long[MAX_QUICK_STARTS];
+        quickStartLabels = new char[MAX_QUICK_STARTS][20];
+        quickStartLengths = new int[MAX_QUICK_STARTS];
+        quickStartRects = new RectF[MAX_QUICK_STARTS];
+        for (int i = 0; i < MAX_QUICK_STARTS; i++)
+            quickStartRects[i] = new RectF();
+        timeZone = TimeZone.getDefault();
+
+        layerTrial = new DrawPathTrial(LAYER_TRIAL_FRAMES);
+        layerLabel = NO_LABEL;
+        ringRect = new RectF();
+        ambientAtlas = new AmbientDigitAtlas();
+
+        frameMetrics = new FrameMetrics();
+        debugText = new StringBuilder(64);
+
         initializeColors();
+        initializePaints();
 
         vibrator = (Vibrator) activity.getSystemService(Activity.VIBRATOR_SERVICE);
 
         setLongClickable(true);
-        setOnTouchListener(new TouchListener());
+        touchListener = new TouchListener();
+        setOnTouchListener(touchListener);
         setOnLongClickListener(new LongClickListener());
     }
 
@@ -84,46 +190,146 @@ public class TimerView extends View implements AmbientModeListener, SimpleTimerL
         this.stimer = stimer;
     }
 
+    public void setTickScheduler(TickScheduler tickScheduler)
+    {
+        this.tickScheduler = tickScheduler;
+    }
+
+    public void setPowerLedger(PowerLedger powerLedger)
+    {
+        this.powerLedger = powerLedger;
+    }
+
+    /**
+     * Sequence the timer is running, or null for a plain countdown. While set,
+     * the view counts down the current phase and labels it with its step name
+     * and round.
+     */
+    public void setSequence(TimerSequence sequence)
+    {
+        if (sequence == this.sequence) return;
+
+        this.sequence = sequence;
+        phase = 0;
+        labelPhase = -1;
+        layerLabel = NO_LABEL;
+        invalidate();
+    }
+
+    public void setStopwatch(Stopwatch stopwatch)
+    {
+        this.stopwatch = stopwatch;
+    }
+
+    public boolean isStopwatchMode()
+    {
+        return stopwatchMode;
+    }
+
+    /**
+     * Switches between the countdown and the stopwatch. Both keep running
+     * while the other one is shown.
+     */
+    public void setStopwatchMode(boolean enabled)
+    {
+        if (stopwatch == null) enabled = false;
+
+        stopwatchMode = enabled;
+        invalidate();
+    }
+
+    /**
+     * Durations offered as one-tap starts while the timer is reset, most used
+     * first. Labels are built here, so drawing them does not allocate.
+     */
+    public void setQuickStartDurations(long durations[], int count)
+    {
+        quickStartCount = Math.min(count, MAX_QUICK_STARTS);
+
+        for (int i = 0; i < quickStartCount; i++)
+        {
+            long seconds = durations[i] / 1000;
+            char label[] = quickStartLabels[i];
+            char padded[] = DigitStrings.PADDED[(int) (seconds % 60)];
+
+            int length = DigitStrings.format(seconds / 60, label);
+            label[length++] = ':';
+            label[length++] = padded[0];
+            label[length++] = padded[1];
+
+            quickStartDurations[i] = durations[i];
+            quickStartLengths[i] = length;
+        }
+
+        layoutQuickStarts();
+        invalidate();
+    }
+
+    private void vibrate(long millis)
+    {
+        vibrator.vibrate(millis);
+        if (powerLedger != null) powerLedger.onVibration(millis);
+    }
+
     private void initializeColors()
     {
         primaryColor = Color.parseColor("#0288d1");
         secondaryColor = Color.WHITE;
         tertiaryColor = ColorHelper.mixColors(primaryColor, Color.BLACK, 0.37f);
         backgroundColor = Color.BLACK;
+
+        // The ring warms up as the countdown runs out.
+        ringColors = ColorHelper.createGradient(primaryColor, Color.parseColor("#ff5722"),
+                RING_COLOR_STEPS);
     }
 
     private void initializePaints()
     {
-        paintInteractive = new Paint();
-        paintInteractive.setColor(Color.parseColor("#B2FF59"));
+        Paint paintInteractive = new Paint();
         paintInteractive.setStyle(Paint.Style.FILL);
         paintInteractive.setAntiAlias(true);
         paintInteractive.setTextAlign(Paint.Align.CENTER);
 
-        pClockInteractive = new Paint();
-        pClockInteractive.setColor(Color.parseColor("#9E9E9E"));
-        pClockInteractive.setStyle(Paint.Style.FILL);
-        pClockInteractive.setAntiAlias(true);
-        pClockInteractive.setTextAlign(Paint.Align.CENTER);
-
-        paintAmbient = new Paint();
+        Paint paintAmbient = new Paint();
         paintAmbient.setColor(Color.WHITE);
         paintAmbient.setStyle(Paint.Style.FILL_AND_STROKE);
         paintAmbient.setAntiAlias(true);
         paintAmbient.setTextAlign(Paint.Align.CENTER);
+
+        paintBackground = new Paint(paintInteractive);
+
+        paintMinutes = new Paint(paintInteractive);
+        paintMinutes.setColor(primaryColor);
+
+        paintSeconds = new Paint(paintInteractive);
+        paintSeconds.setColor(secondaryColor);
+
+        paintLabel = new Paint(paintInteractive);
+        paintLabel.setColor(secondaryColor);
+
+        paintClock = new Paint(paintInteractive);
+        paintClock.setColor(primaryColor);
+
+        paintLabelAmbient = new Paint(paintAmbient);
+
+        paintQuickStart = new Paint(paintInteractive);
+        paintQuickStart.setColor(primaryColor);
+
+        paintRing = new Paint(paintInteractive);
+        paintRing.setStyle(Paint.Style.STROKE);
+        paintRing.setStrokeCap(Paint.Cap.ROUND);
+
+        paintRingTrack = new Paint(paintRing);
+        paintRingTrack.setColor(tertiaryColor);
+
+        paintDebug = new Paint(paintInteractive);
+        paintDebug.setColor(Color.YELLOW);
     }
 
     public void onTimeout()
     {
-        step = 0;
-        vibrator.vibrate(VIBRATION_FINISH, -1);
-
-        PowerManager powerManager =
-                (PowerManager) activity.getSystemService(Activity.POWER_SERVICE);
-        PowerManager.WakeLock wakeLock = powerManager.newWakeLock(
-                PowerManager.SCREEN_BRIGHT_WAKE_LOCK | PowerManager.ACQUIRE_CAUSES_WAKEUP,
-                "MyWakelockTag");
-        wakeLock.acquire(5000);
+        restartBlink();
+        invalidate();
     }
 
     @Override
@@ -132,185 +338,776 @@ public class TimerView extends View implements AmbientModeListener, SimpleTimerL
         width = w;
         height = h;
         size = Math.min(width, height);
-        paintInteractive.setTextSize(size * 0.2f);
-        paintAmbient.setTextSize(size * 0.15f);
-        pClockInteractive.setTextSize(size * 0.08f);
 
         Rect bounds = new Rect();
-        paintInteractive.getTextBounds("00:00", 0, 1, bounds);
+        Paint measurePaint = new Paint(paintMinutes);
+        measurePaint.setTextSize(size * 0.2f);
+        measurePaint.getTextBounds("00:00", 0, 1, bounds);
         fontHeight = bounds.height();
 
+        paintMinutes.setTextSize(size * 0.25f);
+        paintSeconds.setTextSize(size * 0.15f);
+        paintLabel.setTextSize(size * 0.08f);
+        paintClock.setTextSize(size * 0.08f);
+        paintQuickStart.setTextSize(size * 0.08f);
+
+        paintLabelAmbient.setTextSize(size * 0.08f);
+
+        for (int i = 0; i < DigitStrings.COUNT; i++)
+        {
+            minutesWidths[i] = paintMinutes.measureText(DigitStrings.PLAIN[i], 0,
+                    DigitStrings.PLAIN[i].length);
+            secondsWidths[i] = paintSeconds.measureText(DigitStrings.PADDED[i], 0, 2);
+        }
+
         screenRect = new RectF(0, 0, width, height);
+        centerX = screenRect.centerX();
+        timerY = screenRect.centerY();
+        labelY = screenRect.centerY() + (int) (fontHeight * 0.7);
+        clockY = screenRect.centerY() + (int) (fontHeight * 2.0);
+        secondsGap = size * 0.025f;
+        quickStartY = screenRect.centerY() - (int) (fontHeight * 1.6);
+
+        burnInShift = Math.max(1, (int) (size * 0.015f));
+
+        float ringWidth = size * 0.03f;
+        float ringInset = ringWidth / 2 + size * 0.01f;
+        paintRing.setStrokeWidth(ringWidth);
+        paintRingTrack.setStrokeWidth(ringWidth);
+        ringRect.set(centerX - size / 2f + ringInset, timerY - size / 2f + ringInset,
+                centerX + size / 2f - ringInset, timerY + size / 2f - ringInset);
+
+        layoutQuickStarts();
+        releaseStaticLayer();
+        ambientAtlas.build(size * 0.25f, size * 0.08f, lowBitAmbient);
+    }
+
+    private void layoutQuickStarts()
+    {
+        if (screenRect == null) return;
+
+        float spacing = size * 0.22f;
+        float textSize = paintQuickStart.getTextSize();
+
+        for (int i = 0; i < quickStartCount; i++)
+        {
+            float x = centerX + (i - (quickStartCount - 1) / 2f) * spacing;
+            quickStartRects[i].set(x - spacing / 2, quickStartY - textSize * 1.5f,
+                    x + spacing / 2, quickStartY + textSize * 0.5f);
+        }
+    }
+
+    private boolean isShowingQuickStarts()
+    {
+        if (ambientMode || stopwatchMode || stimer.isRunning()) return false;
+        return stimer.getRemainingTime() == stimer.getTotalTime();
+    }
+
+    private int findQuickStart(float x, float y)
+    {
+        if (!isShowingQuickStarts()) return -1;
+
+        for (int i = 0; i < quickStartCount; i++)
+            if (quickStartRects[i].contains(x, y)) return i;
+
+        return -1;
+    }
+
+    @Override
+    protected void onAttachedToWindow()
+    {
+        super.onAttachedToWindow();
+        timeZone = TimeZone.getDefault();
+    }
+
+    @Override
+    protected void onDetachedFromWindow()
+    {
+        super.onDetachedFromWindow();
+        touchListener.release();
+        releaseStaticLayer();
+        ambientAtlas.release();
     }
 
     @Override
     protected void onDraw(Canvas canvas)
     {
-        paint = paintInteractive;
-        if (ambientMode) paint = paintAmbient;
+        long start = System.nanoTime();
 
-        step = (step + 1) % 2;
+        if (stopwatchMode)
+        {
+            drawStopwatch(canvas, start);
+            return;
+        }
 
-        clearBackground(canvas);
-        drawTimer(canvas);
+        long remainingTime = getDisplayedRemainingTime();
+
+        if (ambientMode)
+        {
+            drawAmbient(canvas, (remainingTime / 1000 + 59) / 60);
+            frameMetrics.onFrame(SystemClock.uptimeMillis(), System.nanoTime() - start);
+            return;
+        }
+
+        long minutes = remainingTime / 60000;
+
+        boolean cached = layerTrial.useFirst();
+        if (cached) drawStaticLayer(canvas, minutes);
+        else drawStaticContent(canvas, minutes);
+
+        drawRing(canvas);
+        drawTimer(canvas, remainingTime, minutes);
         drawCurrentTime(canvas);
+        if (isShowingQuickStarts()) drawQuickStarts(canvas);
+
+        onInteractiveFrame(cached, System.nanoTime() - start);
+        if (debugOverlay) drawDebugOverlay(canvas);
+
+        if (tickScheduler != null) tickScheduler.reschedule();
+        if (stimer.isRunning() && stimer.getRemainingTime() > 0) postInvalidateOnAnimation();
     }
 
-    private void drawCurrentTime(Canvas canvas)
+    private void drawStopwatch(Canvas canvas, long start)
     {
-        if (ambientMode) paint.setColor(Color.WHITE);
-        else paint.setColor(primaryColor);
-
-        Calendar c = Calendar.getInstance();
-        int hour = c.get(Calendar.HOUR_OF_DAY);
-        int minutes = c.get(Calendar.MINUTE);
+        long now = SystemClock.elapsedRealtimeNanos();
+        long elapsed = stopwatch.getElapsed(now) / 1000000;
 
         if (ambientMode)
         {
-            paint.setColor(Color.WHITE);
+            drawAmbient(canvas, elapsed / 60000);
+            frameMetrics.onFrame(SystemClock.uptimeMillis(), System.nanoTime() - start);
+            return;
+        }
+
+        boolean cached = layerTrial.useFirst();
+        if (cached) drawStaticLayer(canvas, 0);
+        else drawStaticContent(canvas, 0);
+
+        drawDigits(canvas, elapsed / 60000, (int) (elapsed / 1000 % 60));
+
+        int length = appendText("lap ", lapText, 0);
+        length = appendNumber(stopwatch.getLapNumber(), lapText, length);
+        lapText[length++] = ' ';
+        length = appendLapTime(stopwatch.getCurrentLap(now) / 1000000, lapText, length);
+        canvas.drawText(lapText, 0, length, centerX, labelY, paintLabel);
+
+        if (stopwatch.getLaps().getCount() > 0)
+        {
+            length = appendText("split ", splitText, 0);
+            length = appendLapTime(stopwatch.getLastSplit() / 1000000, splitText, length);
+            canvas.drawText(splitText, 0, length, centerX, quickStartY, paintQuickStart);
         }
 
-        paint.setTextSize(size * 0.08f);
-        canvas.drawText(String.format("%02d:%02d", hour, minutes), screenRect.centerX(),
-                screenRect.centerY() + (int) (fontHeight * 2.0), paint);
+        drawCurrentTime(canvas);
+
+        onInteractiveFrame(cached, System.nanoTime() - start);
+        if (debugOverlay) drawDebugOverlay(canvas);
 
+        if (tickScheduler != null) tickScheduler.reschedule();
+        if (stopwatch.isRunning()) postInvalidateOnAnimation();
     }
 
-    private void drawTimer(Canvas canvas)
+    private int appendText(String text, char buffer[], int offset)
     {
-        if (ambientMode) paint.setColor(Color.WHITE);
-        else paint.setColor(primaryColor);
-        long minutes;
+        text.getChars(0, text.length(), buffer, offset);
+        return offset + text.length();
+    }
 
-        long remainingTime = stimer.getRemainingTime();
+    private int appendNumber(long value, char buffer[], int offset)
+    {
+        int length = DigitStrings.format(value, digitBuffer);
+        System.arraycopy(digitBuffer, 0, buffer, offset, length);
+        return offset + length;
+    }
 
-        if (ambientMode)
+    /**
+     * Writes the time as minutes, seconds and tenths, such as "12:05.3".
+     */
+    private int appendLapTime(long millis, char buffer[], int offset)
+    {
+        char seconds[] = DigitStrings.PADDED[(int) (millis / 1000 % 60)];
+
+        offset = appendNumber(millis / 60000, buffer, offset);
+        buffer[offset++] = ':';
+        buffer[offset++] = seconds[0];
+        buffer[offset++] = seconds[1];
+        buffer[offset++] = '.';
+        buffer[offset++] = (char) ('0' + millis / 100 % 10);
+        return offset;
+    }
+
+    public FrameMetrics getFrameMetrics()
+    {
+        return frameMetrics;
+    }
+
+    /**
+     * Whether the background and label are drawn from a cached bitmap rather
+     * than redrawn every frame. Interactive frames alternate between both
+     * until each has been timed LAYER_TRIAL_FRAMES times, and the faster one
+     * is kept from then on.
+     */
+    public DrawPathTrial getLayerTrial()
+    {
+        return layerTrial;
+    }
+
+    public void restartLayerTrial()
+    {
+        layerTrial.restart();
+        invalidate();
+    }
+
+    private void onInteractiveFrame(boolean cached, long drawNanos)
+    {
+        frameMetrics.onFrame(SystemClock.uptimeMillis(), drawNanos);
+        if (layerTrial.isDecided()) return;
+
+        layerTrial.record(cached, drawNanos);
+        if (layerTrial.isDecided() && !layerTrial.useFirst()) releaseStaticLayer();
+    }
+
+    public boolean isDebugOverlayEnabled()
+    {
+        return debugOverlay;
+    }
+
+    public void setDebugOverlayEnabled(boolean enabled)
+    {
+        debugOverlay = enabled;
+        invalidate();
+    }
+
+    private void drawDebugOverlay(Canvas canvas)
+    {
+        LatencyHistogram drawTimes = frameMetrics.getDrawTimes();
+
+        debugText.setLength(0);
+        debugText.append("draw p50 ");
+        appendMicros(drawTimes.getPercentileNanos(50));
+        debugText.append(" p99 ");
+        appendMicros(drawTimes.getPercentileNanos(99));
+        canvas.drawText(debugText, 0, debugText.length(), centerX, size * 0.15f, paintDebug);
+
+        debugText.setLength(0);
+        debugText.append("jank ");
+        debugText.append(frameMetrics.getJankyFrames());
+        debugText.append('/');
+        debugText.append(frameMetrics.getFrames());
+        canvas.drawText(debugText, 0, debugText.length(), centerX, size * 0.22f, paintDebug);
+    }
+
+    private void appendMicros(long nanos)
+    {
+        debugText.append(nanos / 1000);
+        debugText.append("us");
+    }
+
+    @Override
+    public long getMillisUntilNextTick()
+    {
+        if (stimer == null || ambientMode) return -1;
+
+        long now = System.currentTimeMillis();
+        long localTime = now + timeZone.getOffset(now);
+        long delay = 60000 - (localTime % 60000 + 60000) % 60000;
+
+        // A running stopwatch already redraws on every frame.
+        if (stopwatchMode) return delay;
+
+        if (stimer.isRunning())
         {
-            minutes = (long) (60 * Math.ceil(remainingTime / 1000 / 60.0));
-            paint.setTextSize(size * 0.25f);
-            canvas.drawText(String.format("%d", minutes / 60), screenRect.centerX(),
-                    screenRect.centerY() + (int) (fontHeight * 0), paint);
+            // At zero the next change is the timeout itself, which redraws.
+            long remainingTime = stimer.getRemainingTime();
+            if (remainingTime > 0) delay = Math.min(delay, remainingTime % 1000 + 1);
         }
         else
         {
-            minutes = (long) (60 * Math.floor(remainingTime / 1000 / 60.0));
-            long seconds = remainingTime / 1000 % 60;
+            long elapsed = SystemClock.uptimeMillis() - blinkOrigin;
+            delay = Math.min(delay, BLINK_PERIOD - elapsed % BLINK_PERIOD);
+        }
 
-            if (stimer.isRunning() || step == 1)
-            {
-                paint.setTextSize(size * 0.25f);
-                float minutesWidth = paint.measureText(String.format("%d", minutes / 60));
-
-                paint.setTextSize(size * 0.15f);
-                float secondsWidth = paint.measureText(String.format("%02d", minutes / 60));
-                float totalWidth = minutesWidth + secondsWidth;
-
-                paint.setTextSize(size * 0.25f);
-                canvas.drawText(String.format("%d", minutes / 60),
-                        screenRect.centerX() + minutesWidth / 2 - totalWidth / 2,
-                        screenRect.centerY() + (int) (fontHeight * 0), paint);
-
-                paint.setTextSize(size * 0.15f);
-                paint.setColor(secondaryColor);
-                canvas.drawText(String.format("%02d", seconds),
-                        screenRect.centerX() + minutesWidth + secondsWidth / 2 + size * 0.025f -
-                                totalWidth / 2, screenRect.centerY() + (int) (fontHeight * 0),
-                        paint);
-            }
+        return delay;
+    }
+
+    @Override
+    public void onTick()
+    {
+        frameMetrics.onTick(SystemClock.uptimeMillis());
+        invalidate();
+    }
+
+    private void restartBlink()
+    {
+        blinkOrigin = SystemClock.uptimeMillis();
+    }
+
+    private boolean isBlinkVisible()
+    {
+        long elapsed = SystemClock.uptimeMillis() - blinkOrigin;
+        return (elapsed / BLINK_PERIOD) % 2 == 0;
+    }
+
+    private void drawQuickStarts(Canvas canvas)
+    {
+        for (int i = 0; i < quickStartCount; i++)
+            canvas.drawText(quickStartLabels[i], 0, quickStartLengths[i],
+                    quickStartRects[i].centerX(), quickStartY, paintQuickStart);
+    }
+
+    private void drawCurrentTime(Canvas canvas)
+    {
+        updateClockBuffer();
+        canvas.drawText(clockBuffer, 0, clockBuffer.length, centerX, clockY, paintClock);
+    }
+
+    private void updateClockBuffer()
+    {
+        long now = System.currentTimeMillis();
+        long localMinutes = (now + timeZone.getOffset(now)) / 60000;
+        int minuteOfDay = (int) (localMinutes % (24 * 60));
+        if (minuteOfDay < 0) minuteOfDay += 24 * 60;
+
+        char hours[] = DigitStrings.PADDED[minuteOfDay / 60];
+        char minutes[] = DigitStrings.PADDED[minuteOfDay % 60];
+        clockBuffer[0] = hours[0];
+        clockBuffer[1] = hours[1];
+        clockBuffer[3] = minutes[0];
+        clockBuffer[4] = minutes[1];
+    }
+
+    /**
+     * Ambient frames are drawn from the digit atlas, shifted by a few pixels
+     * every update when the screen asks for burn-in protection.
+     */
+    private void drawAmbient(Canvas canvas, long minutes)
+    {
+        if (!ambientAtlas.isBuilt())
+            ambientAtlas.build(size * 0.25f, size * 0.08f, lowBitAmbient);
+
+        canvas.drawColor(Color.BLACK);
+        canvas.save();
+
+        if (burnInProtection)
+        {
+            int position = burnInStep % BURN_IN_POSITIONS;
+            canvas.translate((position % 3 - 1) * burnInShift, (position / 3 - 1) * burnInShift);
         }
 
-        paint.setTextSize(size * 0.08f);
-        if (!ambientMode) paint.setColor(secondaryColor);
+        int length = DigitStrings.format(minutes, digitBuffer);
+        ambientAtlas.draw(canvas, AmbientDigitAtlas.LARGE, digitBuffer, 0, length, centerX,
+                timerY);
+
+        if (!stopwatchMode) drawLabel(canvas, minutes);
+
+        updateClockBuffer();
+        ambientAtlas.draw(canvas, AmbientDigitAtlas.SMALL, clockBuffer, 0, clockBuffer.length,
+                centerX, clockY);
+
+        canvas.restore();
+    }
+
+    private long getDisplayedRemainingTime()
+    {
+        long remainingTime = stimer.getRemainingTime();
+        if (sequence == null) return remainingTime;
+
+        long elapsed = stimer.getTotalTime() - remainingTime;
+        phase = sequence.findPhase(elapsed, phase);
+        return sequence.getPhaseEnd(phase) - elapsed;
+    }
+
+    /**
+     * Arc for the part of the total time that is left. The track sits in the
+     * static layer and the geometry is fixed per size, so a frame only works
+     * out the sweep angle and picks its color from the gradient.
+     */
+    private void drawRing(Canvas canvas)
+    {
+        long totalTime = stimer.getTotalTime();
+        if (totalTime <= 0) return;
+
+        float fraction = (float) stimer.getRemainingTime() / totalTime;
+        fraction = Math.max(0, Math.min(1, fraction));
+        if (fraction == 0) return;
+
+        paintRing.setColor(ringColors[(int) ((1 - fraction) * (RING_COLOR_STEPS - 1))]);
+        canvas.drawArc(ringRect, -90, 360 * fraction, false, paintRing);
+    }
+
+    private void drawTimer(Canvas canvas, long remainingTime, long minutes)
+    {
+        if (!stimer.isRunning() && !isBlinkVisible()) return;
+        drawDigits(canvas, minutes, (int) (remainingTime / 1000 % 60));
+    }
+
+    private void drawDigits(Canvas canvas, long minutes, int seconds)
+    {
+        float minutesWidth;
+        if (minutes < DigitStrings.COUNT) minutesWidth = minutesWidths[(int) minutes];
+        else
+        {
+            int length = DigitStrings.format(minutes, digitBuffer);
+            minutesWidth = paintMinutes.measureText(digitBuffer, 0, length);
+        }
+
+        float secondsWidth = secondsWidths[seconds];
+        float totalWidth = minutesWidth + secondsWidth;
+
+        drawNumber(canvas, minutes, centerX + minutesWidth / 2 - totalWidth / 2, timerY,
+                paintMinutes);
+
+        canvas.drawText(DigitStrings.PADDED[seconds], 0, 2,
+                centerX + minutesWidth + secondsWidth / 2 + secondsGap - totalWidth / 2,
+                timerY, paintSeconds);
+    }
+
+    /**
+     * Background, ring track and label only change with the phase or the
+     * plural of "minutes", so they are drawn once into a bitmap and the bitmap
+     * is blitted on every other frame.
+     */
+    private void drawStaticLayer(Canvas canvas, long minutes)
+    {
+        int label = getLabelKey(minutes);
+
+        if (staticLayer == null)
+        {
+            staticLayer = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            layerCanvas = new Canvas(staticLayer);
+            layerLabel = NO_LABEL;
+        }
+
+        if (label != layerLabel)
+        {
+            drawStaticContent(layerCanvas, minutes);
+
+            layerLabel = label;
+        }
+
+        canvas.drawBitmap(staticLayer, 0, 0, null);
+    }
+
+    private void drawStaticContent(Canvas canvas, long minutes)
+    {
+        clearBackground(canvas);
+        if (stopwatchMode) return;
+
+        canvas.drawArc(ringRect, 0, 360, false, paintRingTrack);
+        drawLabel(canvas, minutes);
+    }
+
+    private void releaseStaticLayer()
+    {
+        if (staticLayer == null) return;
+
+        staticLayer.recycle();
+        staticLayer = null;
+        layerCanvas = null;
+        layerLabel = NO_LABEL;
+    }
+
+    private int getLabelKey(long minutes)
+    {
+        if (stopwatchMode) return LABEL_STOPWATCH;
+        if (sequence != null) return phase;
+        if (minutes == 1) return LABEL_MINUTE;
+        return LABEL_MINUTES;
+    }
+
+    private void drawLabel(Canvas canvas, long minutes)
+    {
+        Paint paint = paintLabel;
+        if (ambientMode) paint = paintLabelAmbient;
+
+        if (sequence != null)
+        {
+            if (phase != labelPhase) buildPhaseLabel();
+            canvas.drawText(phaseLabel, 0, phaseLabelLength, centerX, labelY, paint);
+            return;
+        }
 
         String text = "minutes";
-        if (minutes / 60 == 1) text = "minute";
+        if (minutes == 1) text = "minute";
+
+        canvas.drawText(text, centerX, labelY, paint);
+    }
+
+    private void buildPhaseLabel()
+    {
+        String name = sequence.getStepName(phase);
+        int length = Math.min(name.length(), phaseLabel.length - 24);
+        name.getChars(0, length, phaseLabel, 0);
+        if (length > 0) phaseLabel[length++] = ' ';
+
+        length = appendPhaseLabel(sequence.getRound(phase), length);
+        phaseLabel[length++] = '/';
+        length = appendPhaseLabel(sequence.getRoundCount(), length);
 
-        canvas.drawText(text, screenRect.centerX(), screenRect.centerY() + (int) (fontHeight * 0.7),
-                paint);
+        phaseLabelLength = length;
+        labelPhase = phase;
+    }
+
+    private int appendPhaseLabel(long value, int offset)
+    {
+        int length = DigitStrings.format(value, digitBuffer);
+        System.arraycopy(digitBuffer, 0, phaseLabel, offset, length);
+        return offset + length;
+    }
+
+    private void drawNumber(Canvas canvas, long value, float x, float y, Paint paint)
+    {
+        if (value < DigitStrings.COUNT)
+        {
+            char digits[] = DigitStrings.PLAIN[(int) value];
+            canvas.drawText(digits, 0, digits.length, x, y, paint);
+        }
+        else
+        {
+            int length = DigitStrings.format(value, digitBuffer);
+            canvas.drawText(digitBuffer, 0, length, x, y, paint);
+        }
     }
 
     private void clearBackground(Canvas canvas)
     {
-        if(ambientMode) paint.setColor(Color.BLACK);
-        else paint.setColor(backgroundColor);
+        if(ambientMode) paintBackground.setColor(Color.BLACK);
+        else paintBackground.setColor(backgroundColor);
 
-        canvas.drawRect(screenRect, paint);
+        canvas.drawRect(screenRect, paintBackground);
     }
 
     @Override
     public void onEnterAmbient(Bundle ambientDetails)
     {
-        if (!stimer.isRunning()) activity.finishAffinity();
-
         ambientMode = true;
-        Log.d(TAG, "onEnterAmbient()");
+
+        boolean lowBit = ambientDetails.getBoolean(WearableActivity.EXTRA_LOWBIT_AMBIENT, false);
+        burnInProtection = ambientDetails.getBoolean(WearableActivity.EXTRA_BURN_IN_PROTECTION,
+                false);
+
+        if (lowBit != lowBitAmbient)
+        {
+            lowBitAmbient = lowBit;
+            paintLabelAmbient.setAntiAlias(!lowBit);
+            ambientAtlas.release();
+        }
+
+        burnInStep++;
+        Log.d(TAG, "onEnterAmbient() lowBit=" + lowBit + " burnIn=" + burnInProtection);
     }
 
     @Override
     public void onExitAmbient()
     {
         ambientMode = false;
+        timeZone = TimeZone.getDefault();
         Log.d(TAG, "onExitAmbient()");
     }
 
     @Override
     public void onUpdateAmbient()
     {
+        burnInStep++;
         Log.d(TAG, "onUpdateAmbient()");
     }
 
-    class TouchListener implements View.OnTouchListener
+    /**
+     * Turns vertical drags into duration steps. Every sample of a move event,
+     * including the batched historical ones, feeds the travelled distance and
+     * the velocity tracker, but the model is only updated once per frame, from
+     * a Choreographer callback. Fast swipes take larger steps, and releasing a
+     * fast swipe keeps stepping for a while as the fling decelerates.
+     */
+    class TouchListener implements View.OnTouchListener, Choreographer.FrameCallback
     {
+        private static final float STEP_DISTANCE = 20;
+        private static final float SWIPE_DISTANCE = 60;
+        private static final float FAST_SWIPE_VELOCITY = 1500;
+        private static final float MIN_FLING_VELOCITY = 1000;
+        private static final float STOP_FLING_VELOCITY = 200;
+        private static final float FLING_TIME_CONSTANT = 0.25f;
+
+        private final Choreographer choreographer;
+        private VelocityTracker velocityTracker;
+
+        private float downX;
         private float prevY;
-        private float prevX;
-        private long prevDy;
+        private float travel;
+        private float pendingDistance;
+        private long pendingEventTime;
+        private float velocity;
+
+        private boolean frameScheduled;
+        private boolean flinging;
+        private long prevFrameTime;
+
+        public TouchListener()
+        {
+            choreographer = Choreographer.getInstance();
+            pendingEventTime = -1;
+        }
 
         @Override
         public boolean onTouch(View v, MotionEvent event)
         {
-            int box = 20;
+            if (velocityTracker == null) velocityTracker = VelocityTracker.obtain();
 
             switch (event.getAction() & MotionEvent.ACTION_MASK)
             {
                 case MotionEvent.ACTION_DOWN:
+                    stop();
+                    velocityTracker.clear();
+                    velocityTracker.addMovement(event);
+                    downX = event.getX();
                     prevY = event.getY();
-                    prevX = event.getX();
+                    travel = 0;
                     hasMoved = false;
                     hasLongPressed = false;
                     break;
 
                 case MotionEvent.ACTION_MOVE:
-                    int dy = (int) ((prevY - event.getY()) / box);
-                    int dx = (int) ((prevX - event.getX()) / box);
-
-                    if (Math.abs(dy) < 1) break;
+                    velocityTracker.addMovement(event);
 
+                    for (int i = 0; i < event.getHistorySize(); i++)
+                        addDistance(event.getHistoricalY(i));
+                    addDistance(event.getY());
 
+                    if (!hasMoved && Math.abs(travel) < STEP_DISTANCE) break;
                     hasMoved = true;
-                    if (dy == prevDy) break;
+                    if (stopwatchMode) break;
 
-                    stimer.increment(dy > 0 ? 1 : -1);
+                    velocityTracker.computeCurrentVelocity(1000);
+                    velocity = -velocityTracker.getYVelocity();
 
-                    step = 0;
-                    prevDy = dy;
-                    prevY = event.getY();
-                    invalidate();
+                    if (pendingEventTime < 0) pendingEventTime = event.getEventTime();
+                    scheduleFrame();
                     break;
 
                 case MotionEvent.ACTION_UP:
-                    if (hasMoved) break;
                     if (hasLongPressed) break;
-                    prevDy = -100;
 
-                    stimer.flip();
-
-                    vibrator.vibrate(80);
+                    if (hasMoved && stopwatchMode) break;
+
+                    if (hasMoved)
+                    {
+                        velocityTracker.addMovement(event);
+                        velocityTracker.computeCurrentVelocity(1000);
+                        velocity = -velocityTracker.getYVelocity();
+                        flinging = Math.abs(velocity) >= MIN_FLING_VELOCITY;
+                        prevFrameTime = -1;
+                        scheduleFrame();
+                        break;
+                    }
+
+                    // Horizontal swipes switch modes; swiping right is usually
+                    // taken by the system to dismiss the app, but left is free.
+                    if (Math.abs(event.getX() - downX) >= SWIPE_DISTANCE)
+                    {
+                        setStopwatchMode(!stopwatchMode);
+                        vibrate(40);
+                        break;
+                    }
+
+                    int choice = findQuickStart(event.getX(), event.getY());
+                    if (stopwatchMode) stopwatch.flip(SystemClock.elapsedRealtimeNanos());
+                    else if (choice >= 0)
+                    {
+                        stimer.setTotalTime(quickStartDurations[choice]);
+                        stimer.resume();
+                    }
+                    else stimer.flip();
+
+                    restartBlink();
+
+                    vibrate(80);
+                    frameMetrics.onInput(event.getEventTime());
                     invalidate();
                     break;
+
+                case MotionEvent.ACTION_CANCEL:
+                    stop();
+                    break;
             }
 
             return false;
         }
+
+        @Override
+        public void doFrame(long frameTimeNanos)
+        {
+            frameScheduled = false;
+            if (stimer == null) return;
+
+            if (flinging) fling(frameTimeNanos);
+
+            int steps = (int) (pendingDistance / STEP_DISTANCE);
+            pendingDistance -= steps * STEP_DISTANCE;
+
+            if (steps != 0)
+            {
+                int multiplier = 1 + (int) (Math.abs(velocity) / FAST_SWIPE_VELOCITY);
+                stimer.increment(steps * multiplier);
+                restartBlink();
+
+                if (pendingEventTime >= 0) frameMetrics.onInput(pendingEventTime);
+                invalidate();
+            }
+
+            pendingEventTime = -1;
+            if (flinging) scheduleFrame();
+        }
+
+        public void stop()
+        {
+            if (frameScheduled) choreographer.removeFrameCallback(this);
+
+            frameScheduled = false;
+            flinging = false;
+            pendingDistance = 0;
+            pendingEventTime = -1;
+        }
+
+        /**
+         * Stops any fling and returns the velocity tracker to its pool. The
+         * next touch obtains a new one, in case the view is attached again.
+         */
+        public void release()
+        {
+            stop();
+            if (velocityTracker == null) return;
+
+            velocityTracker.recycle();
+            velocityTracker = null;
+        }
+
+        private void addDistance(float y)
+        {
+            pendingDistance += prevY - y;
+            travel += prevY - y;
+            prevY = y;
+        }
+
+        private void fling(long frameTimeNanos)
+        {
+            if (prevFrameTime >= 0)
+            {
+                float dt = (frameTimeNanos - prevFrameTime) / 1e9f;
+                pendingDistance += velocity * dt;
+                velocity *= (float) Math.exp(-dt / FLING_TIME_CONSTANT);
+            }
+
+            prevFrameTime = frameTimeNanos;
+            if (Math.abs(velocity) < STOP_FLING_VELOCITY) flinging = false;
+        }
+
+        private void scheduleFrame()
+        {
+            if (frameScheduled) return;
+
+            choreographer.postFrameCallback(this);
+            frameScheduled = true;
+        }
     }
 
     class LongClickListener implements View.OnLongClickListener
@@ -320,11 +1117,26 @@ public class TimerView extends View implements AmbientModeListener, SimpleTimerL
         {
             if (hasMoved) return false;
 
-            stimer.reset();
+            if (stopwatchMode && stopwatch.isRunning())
+            {
+                stopwatch.lap(SystemClock.elapsedRealtimeNanos());
+                vibrate(80);
+            }
+            else if (stopwatchMode)
+            {
+                stopwatch.reset();
+                vibrate(250);
+            }
+            else
+            {
+                stimer.reset();
+                restartBlink();
+                vibrate(250);
+            }
 
-            vibrator.vibrate(250);
             hasLongPressed = true;
 
+            frameMetrics.onInput(SystemClock.uptimeMillis());
             invalidate();
 
             return true;
@@ -0,0 +1,129 @@
+package org.isoron.simpletimer.sync;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.util.Log;
+
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.common.api.ResultCallback;
+import com.google.android.gms.wearable.MessageApi;
+import com.google.android.gms.wearable.MessageEvent;
+import com.google.android.gms.wearable.Node;
+import com.google.android.gms.wearable.NodeApi;
+import com.google.android.gms.wearable.Wearable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Carries sync messages over the Wearable MessageApi to every connected node.
+ * Messages sent before the nodes are known are dropped rather than queued,
+ * since their timestamps would no longer be accurate; the ready callback
+ * tells the owner when sending becomes possible.
+ */
+public class MessageApiTransport implements SyncTransport, MessageApi.MessageListener,
+        GoogleApiClient.ConnectionCallbacks
+{
+    public static final String PATH = "/simpletimer/sync";
+
+    private static final String TAG = "MessageApiTransport";
+
+    private final GoogleApiClient client;
+    private final List<String> nodes;
+    private final boolean listening;
+
+    private SyncPeer receiver;
+    private Runnable readyCallback;
+
+    public MessageApiTransport(Context context)
+    {
+        this(context, true);
+    }
+
+    /**
+     * @param listening whether to register for incoming messages while
+     *                  connected; false when a WearableListenerService receives
+     *                  them and hands them to the receiver instead
+     */
+    public MessageApiTransport(Context context, boolean listening)
+    {
+        this.listening = listening;
+
+        client = new GoogleApiClient.Builder(context)
+                .addApi(Wearable.API)
+                .addConnectionCallbacks(this)
+                .build();
+
+        nodes = new ArrayList<String>();
+    }
+
+    public void setReceiver(SyncPeer receiver)
+    {
+        this.receiver = receiver;
+    }
+
+    public void setReadyCallback(Runnable readyCallback)
+    {
+        this.readyCallback = readyCallback;
+    }
+
+    public boolean isReady()
+    {
+        return !nodes.isEmpty();
+    }
+
+    public void connect()
+    {
+        client.connect();
+    }
+
+    public void disconnect()
+    {
+        if (listening && client.isConnected()) Wearable.MessageApi.removeListener(client, this);
+
+        client.disconnect();
+        nodes.clear();
+    }
+
+    @Override
+    public void send(byte message[])
+    {
+        if (!client.isConnected()) return;
+
+        for (String node : nodes)
+            Wearable.MessageApi.sendMessage(client, node, PATH, message);
+    }
+
+    @Override
+    public void onConnected(Bundle bundle)
+    {
+        if (listening) Wearable.MessageApi.addListener(client, this);
+        Wearable.NodeApi.getConnectedNodes(client).setResultCallback(
+                new ResultCallback<NodeApi.GetConnectedNodesResult>()
+                {
+                    @Override
+                    public void onResult(NodeApi.GetConnectedNodesResult result)
+                    {
+                        nodes.clear();
+                        for (Node node : result.getNodes())
+                            nodes.add(node.getId());
+
+                        Log.d(TAG, nodes.size() + " connected nodes");
+                        if (isReady() && readyCallback != null) readyCallback.run();
+                    }
+                });
+    }
+
+    @Override
+    public void onConnectionSuspended(int cause)
+    {
+        nodes.clear();
+    }
+
+    @Override
+    public void onMessageReceived(MessageEvent event)
+    {
+        if (!PATH.equals(event.getPath())) return;
+        if (receiver != null) receiver.onMessage(event.getData(), System.currentTimeMillis());
+    }
+}